@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies;
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteReviews;
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteVideos;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the migrations of the database of favorite movies. Every fixture database (an old
+ * version of the schema, with some favorites) is upgraded to the latest version, which must keep
+ * the favorites and end up with the same schema as a new database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FavoriteMoviesMigrationTest {
+    private static final String MIGRATED_DATABASE_NAME = "favorite_movies_migrated_test.db";
+    private static final String NEW_DATABASE_NAME = "favorite_movies_new_test.db";
+    // The versions with a fixture database, in src/test/resources/fixtures
+    private static final int[] FIXTURE_VERSIONS = {1, 2, 3};
+    // The favorites in every fixture database
+    private static final int FIXTURE_FAVORITES = 3;
+    private static final int FIXTURE_MOVIE_ID = 550;
+    private static final String FIXTURE_MOVIE_TITLE = "Fight Club";
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(MIGRATED_DATABASE_NAME);
+        context.deleteDatabase(NEW_DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(MIGRATED_DATABASE_NAME);
+        context.deleteDatabase(NEW_DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradeKeepsFavorites() {
+        for (int version : FIXTURE_VERSIONS) {
+            FavoriteMoviesDbHelper dbHelper = openFixtureDatabase(version);
+            try {
+                SQLiteDatabase db = dbHelper.getReadableDatabase();
+                assertEquals(FavoriteMoviesDbHelper.DATABASE_VERSION, db.getVersion());
+                assertEquals("Favorites of version " + version, FIXTURE_FAVORITES,
+                        DatabaseUtils.queryNumEntries(db, FavoriteMovies.TABLE_NAME));
+
+                Cursor cursor = db.query(FavoriteMovies.TABLE_NAME,
+                        new String[]{FavoriteMovies.COLUMN_TITLE},
+                        FavoriteMovies._ID + "=?",
+                        new String[]{String.valueOf(FIXTURE_MOVIE_ID)},
+                        null,
+                        null,
+                        null);
+                try {
+                    assertTrue(cursor.moveToFirst());
+                    assertEquals(FIXTURE_MOVIE_TITLE, cursor.getString(0));
+                } finally {
+                    cursor.close();
+                }
+            } finally {
+                dbHelper.close();
+            }
+        }
+    }
+
+    @Test
+    public void upgradedSchemaMatchesNewSchema() {
+        FavoriteMoviesDbHelper newDbHelper = new FavoriteMoviesDbHelper(context,
+                NEW_DATABASE_NAME);
+        Map<String, String> newSchema;
+        try {
+            newSchema = getSchema(newDbHelper.getReadableDatabase());
+        } finally {
+            newDbHelper.close();
+        }
+
+        for (int version : FIXTURE_VERSIONS) {
+            FavoriteMoviesDbHelper dbHelper = openFixtureDatabase(version);
+            try {
+                assertEquals("Schema upgraded from version " + version, newSchema,
+                        getSchema(dbHelper.getReadableDatabase()));
+            } finally {
+                dbHelper.close();
+            }
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1AddsDetailsOfFavorites() {
+        FavoriteMoviesDbHelper dbHelper = openFixtureDatabase(1);
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+            ContentValues values = new ContentValues();
+            values.put(FavoriteVideos.COLUMN_MOVIE_ID, FIXTURE_MOVIE_ID);
+            values.put(FavoriteVideos.COLUMN_POSITION, 0);
+            values.put(FavoriteVideos.COLUMN_KEY, "SUXWAEX2jlg");
+            assertTrue(db.insert(FavoriteVideos.TABLE_NAME, null, values) != -1);
+
+            // The videos are deleted with their movie
+            db.delete(FavoriteMovies.TABLE_NAME, FavoriteMovies._ID + "=?",
+                    new String[]{String.valueOf(FIXTURE_MOVIE_ID)});
+            assertEquals(0, DatabaseUtils.queryNumEntries(db, FavoriteVideos.TABLE_NAME));
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion2KeepsDetailsOfFavorites() {
+        FavoriteMoviesDbHelper dbHelper = openFixtureDatabase(2);
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            assertEquals(1, DatabaseUtils.queryNumEntries(db, FavoriteVideos.TABLE_NAME,
+                    FavoriteVideos.COLUMN_MOVIE_ID + "=?",
+                    new String[]{String.valueOf(FIXTURE_MOVIE_ID)}));
+            assertEquals(1, DatabaseUtils.queryNumEntries(db, FavoriteReviews.TABLE_NAME,
+                    FavoriteReviews.COLUMN_MOVIE_ID + "=?",
+                    new String[]{String.valueOf(FIXTURE_MOVIE_ID)}));
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeIndexesFavoritesForSearch() {
+        for (int version : FIXTURE_VERSIONS) {
+            FavoriteMoviesDbHelper dbHelper = openFixtureDatabase(version);
+            try {
+                Cursor cursor = FavoriteMoviesQuery.fromUri(
+                        FavoriteMovies.buildSearchUri("fight"), null, null, null)
+                        .query(dbHelper.getReadableDatabase(),
+                                new String[]{FavoriteMovies._ID});
+                try {
+                    assertTrue("Search after upgrade from version " + version,
+                            cursor.moveToFirst());
+                    assertEquals(FIXTURE_MOVIE_ID, cursor.getInt(0));
+                    assertFalse(cursor.moveToNext());
+                } finally {
+                    cursor.close();
+                }
+            } finally {
+                dbHelper.close();
+            }
+        }
+    }
+
+    /**
+     * Creates a database from a fixture and opens it with the FavoriteMoviesDbHelper, which
+     * upgrades it as soon as it is used
+     *
+     * @param version the version of the fixture
+     * @return the FavoriteMoviesDbHelper
+     */
+    private FavoriteMoviesDbHelper openFixtureDatabase(int version) {
+        context.deleteDatabase(MIGRATED_DATABASE_NAME);
+        DatabaseUtils.createDbFromSqlStatements(context, MIGRATED_DATABASE_NAME, version,
+                readFixture("favorite_movies_v" + version + ".sql"));
+        return new FavoriteMoviesDbHelper(context, MIGRATED_DATABASE_NAME);
+    }
+
+    /**
+     * Describes the schema of a database: the columns and the foreign keys of every table, the
+     * columns of every index and the triggers
+     *
+     * @param db the database
+     * @return the description of every table, index and trigger, by name
+     */
+    private static Map<String, String> getSchema(SQLiteDatabase db) {
+        Map<String, String> schema = new TreeMap<>();
+
+        Cursor cursor = db.rawQuery("SELECT type, name FROM sqlite_master " +
+                "WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        try {
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                String name = cursor.getString(1);
+                switch (type) {
+                    case "table":
+                        schema.put(name, describe(db, "PRAGMA table_info(" + name + ")") +
+                                describe(db, "PRAGMA foreign_key_list(" + name + ")"));
+                        break;
+                    case "index":
+                        schema.put(name, describe(db, "PRAGMA index_info(" + name + ")"));
+                        break;
+                    default:
+                        schema.put(name, type);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return schema;
+    }
+
+    /**
+     * Describes the rows returned by a pragma
+     *
+     * @param db  the database
+     * @param sql the pragma
+     * @return the rows, one per line
+     */
+    private static String describe(SQLiteDatabase db, String sql) {
+        StringBuilder description = new StringBuilder();
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                List<String> row = new ArrayList<>();
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    row.add(cursor.getColumnName(i) + "=" + cursor.getString(i));
+                }
+                description.append(row).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return description.toString();
+    }
+
+    private static String readFixture(String name) {
+        InputStream in = FavoriteMoviesMigrationTest.class.getClassLoader()
+                .getResourceAsStream("fixtures/" + name);
+        if (in == null) {
+            throw new IllegalStateException("Fixture not found: " + name);
+        }
+
+        try {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                return out.toString("UTF-8");
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fixture not readable: " + name, e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the sorted, filtered and searched queries of the favorite movies: their results, and
+ * their plans, which must use the indexes of the favorites table (or its full-text index) instead
+ * of scanning it or sorting it in a temporary table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FavoriteMoviesQueryPlanTest {
+    private static final String DATABASE_NAME = "favorite_movies_query_test.db";
+    // What a plan says when the rows are sorted outside of an index
+    private static final String TEMP_SORT = "TEMP B-TREE";
+    private Context context;
+    private FavoriteMoviesDbHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new FavoriteMoviesDbHelper(context, DATABASE_NAME);
+        db = dbHelper.getWritableDatabase();
+
+        insertFavorite(550, "Fight Club", 8.4f, "1999");
+        insertFavorite(680, "pulp Fiction", 8.5f, "1994");
+        insertFavorite(129, "Spirited Away", 8.5f, "2001");
+        insertFavorite(603, "The Matrix", 7.9f, "1999");
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void sortByRatingUsesIndex() {
+        String plan = getPlan(FavoriteMovies.buildSortedUri(
+                FavoriteMoviesContract.PATH_BY_RATING));
+        assertTrue(plan, plan.contains("favorites_vote_average"));
+        assertFalse(plan, plan.contains(TEMP_SORT));
+    }
+
+    @Test
+    public void sortByReleaseDateUsesIndex() {
+        String plan = getPlan(FavoriteMovies.buildSortedUri(
+                FavoriteMoviesContract.PATH_BY_RELEASE_DATE));
+        assertTrue(plan, plan.contains("favorites_release_date"));
+        assertFalse(plan, plan.contains(TEMP_SORT));
+    }
+
+    @Test
+    public void sortByTitleUsesIndex() {
+        String plan = getPlan(FavoriteMovies.buildSortedUri(
+                FavoriteMoviesContract.PATH_BY_TITLE));
+        assertTrue(plan, plan.contains("favorites_title"));
+        assertFalse(plan, plan.contains(TEMP_SORT));
+    }
+
+    @Test
+    public void minimumRatingSearchesIndex() {
+        String plan = getPlan(FavoriteMovies.buildSortedUri(FavoriteMoviesContract.PATH_BY_RATING)
+                .buildUpon()
+                .appendQueryParameter(FavoriteMoviesContract.PARAM_MIN_RATING, "8")
+                .build());
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains("favorites_vote_average"));
+        assertFalse(plan, plan.contains(TEMP_SORT));
+    }
+
+    @Test
+    public void yearRangeSearchesIndex() {
+        String plan = getPlan(FavoriteMovies.buildSortedUri(
+                FavoriteMoviesContract.PATH_BY_RELEASE_DATE)
+                .buildUpon()
+                .appendQueryParameter(FavoriteMoviesContract.PARAM_MIN_YEAR, "1990")
+                .appendQueryParameter(FavoriteMoviesContract.PARAM_MAX_YEAR, "1999")
+                .build());
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains("favorites_release_date"));
+        assertFalse(plan, plan.contains(TEMP_SORT));
+    }
+
+    @Test
+    public void filtersAndSorts() {
+        Uri uri = FavoriteMovies.buildSortedUri(FavoriteMoviesContract.PATH_BY_RATING)
+                .buildUpon()
+                .appendQueryParameter(FavoriteMoviesContract.PARAM_MIN_YEAR, "1995")
+                .appendQueryParameter(FavoriteMoviesContract.PARAM_MIN_RATING, "8")
+                .build();
+        assertEquals("[129, 550]", getIds(uri).toString());
+
+        // The titles are sorted ignoring their case
+        uri = FavoriteMovies.buildSortedUri(FavoriteMoviesContract.PATH_BY_TITLE);
+        assertEquals("[550, 680, 129, 603]", getIds(uri).toString());
+    }
+
+    @Test
+    public void searchMatchesStartsOfWords() {
+        assertEquals("[129]", getIds(FavoriteMovies.buildSearchUri("spir aw")).toString());
+        assertEquals("[550, 680]", getIds(FavoriteMovies.buildSearchUri("FI")).toString());
+        // Every word must match, and none is taken for an operator
+        assertEquals("[]", getIds(FavoriteMovies.buildSearchUri("fight OR matrix")).toString());
+        assertEquals("[]", getIds(FavoriteMovies.buildSearchUri(" - ")).toString());
+    }
+
+    @Test
+    public void searchUsesFullTextIndex() {
+        String plan = getPlan(FavoriteMovies.buildSearchUri("matrix"));
+        assertTrue(plan, plan.contains("VIRTUAL TABLE"));
+    }
+
+    @Test
+    public void searchFollowsChangesOfFavorites() {
+        ContentValues values = new ContentValues();
+        values.put(FavoriteMovies.COLUMN_TITLE, "The Matrix Reloaded");
+        db.update(FavoriteMovies.TABLE_NAME, values, FavoriteMovies._ID + "=603", null);
+        assertEquals("[603]", getIds(FavoriteMovies.buildSearchUri("reload")).toString());
+
+        db.delete(FavoriteMovies.TABLE_NAME, FavoriteMovies._ID + "=550", null);
+        assertEquals("[]", getIds(FavoriteMovies.buildSearchUri("fight")).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidFilterIsRejected() {
+        FavoriteMoviesQuery.fromUri(FavoriteMovies.CONTENT_URI.buildUpon()
+                .appendQueryParameter(FavoriteMoviesContract.PARAM_MIN_YEAR, "last year")
+                .build(), null, null, null);
+    }
+
+    /**
+     * Gets the plan of the query of a uri
+     *
+     * @param uri the uri
+     * @return the details of the plan, one step per line
+     */
+    private String getPlan(Uri uri) {
+        FavoriteMoviesQuery query = FavoriteMoviesQuery.fromUri(uri, null, null, null);
+
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query.toSql(null),
+                query.getSelectionArgs());
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Gets the ids of the favorites returned by the query of a uri, in their order (or in the
+     * order of their ids, if the uri has none)
+     *
+     * @param uri the uri
+     * @return the ids
+     */
+    private List<Integer> getIds(Uri uri) {
+        List<Integer> ids = new ArrayList<>();
+        Cursor cursor = FavoriteMoviesQuery.fromUri(uri, null, null, FavoriteMovies._ID)
+                .query(db, new String[]{FavoriteMovies._ID});
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private void insertFavorite(int movieId, String title, float rating, String year) {
+        ContentValues values = new ContentValues();
+        values.put(FavoriteMovies._ID, movieId);
+        values.put(FavoriteMovies.COLUMN_ORIGINAL_TITLE, title);
+        values.put(FavoriteMovies.COLUMN_TITLE, title);
+        values.put(FavoriteMovies.COLUMN_VOTE_AVERAGE, rating);
+        values.put(FavoriteMovies.COLUMN_RELEASE_DATE, year);
+        db.insert(FavoriteMovies.TABLE_NAME, null, values);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies;
+import com.example.android.popularmovies.loadtest.LoadTestHarness;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load tests of the database of favorite movies: readers listing all the favorites (as the
+ * CursorLoader does) run together with writers adding favorites (as the detail screen does). The
+ * same workload runs with the rollback journal and with write-ahead logging, and both reports are
+ * logged with the tag FavoritesDbLoadTest.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FavoritesDbLoadTest {
+    private static final String TAG = FavoritesDbLoadTest.class.getSimpleName();
+    private static final String DATABASE_NAME = "favorite_movies_load_test.db";
+    private static final int CONCURRENCY = 4;
+    private static final int FAVORITES = 500;
+    private static final int OPERATIONS = 400;
+    // One operation out of this many is a write
+    private static final int WRITE_EVERY = 5;
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void writeAheadLoggingIsEnabled() {
+        FavoriteMoviesDbHelper dbHelper = new FavoriteMoviesDbHelper(context, DATABASE_NAME);
+        try {
+            assertTrue(dbHelper.getReadableDatabase().isWriteAheadLoggingEnabled());
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void mixedReadsAndWrites() throws Exception {
+        LoadTestHarness.Report before = runMixedWorkload(false);
+        LoadTestHarness.Report after = runMixedWorkload(true);
+
+        Log.i(TAG, before.toString());
+        Log.i(TAG, after.toString());
+        assertEquals(0, before.getFailures());
+        assertEquals(0, after.getFailures());
+    }
+
+    /**
+     * Runs the mixed workload on a new database
+     *
+     * @param writeAheadLogging whether the database uses write-ahead logging
+     * @return the report of the run
+     * @throws InterruptedException if the test is interrupted
+     */
+    private LoadTestHarness.Report runMixedWorkload(boolean writeAheadLogging)
+            throws InterruptedException {
+        context.deleteDatabase(DATABASE_NAME);
+        FavoriteMoviesDbHelper dbHelper = new FavoriteMoviesDbHelper(context, DATABASE_NAME);
+        dbHelper.setWriteAheadLoggingEnabled(writeAheadLogging);
+
+        try {
+            final SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < FAVORITES; i++) {
+                    db.insert(FavoriteMovies.TABLE_NAME, null, buildFavorite(i));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            return new LoadTestHarness(CONCURRENCY).run(
+                    writeAheadLogging ? "write-ahead log" : "rollback journal", OPERATIONS,
+                    new LoadTestHarness.Operation() {
+                        @Override
+                        public boolean run(int index) {
+                            if (index % WRITE_EVERY == 0) {
+                                return db.insert(FavoriteMovies.TABLE_NAME, null,
+                                        buildFavorite(FAVORITES + index)) != -1;
+                            }
+
+                            Cursor cursor = db.query(FavoriteMovies.TABLE_NAME, null, null,
+                                    null, null, null, FavoriteMovies.COLUMN_TITLE);
+                            try {
+                                int count = 0;
+                                while (cursor.moveToNext()) {
+                                    count++;
+                                }
+                                return count >= FAVORITES;
+                            } finally {
+                                cursor.close();
+                            }
+                        }
+                    });
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    private static ContentValues buildFavorite(int movieId) {
+        ContentValues values = new ContentValues();
+        values.put(FavoriteMovies._ID, movieId);
+        values.put(FavoriteMovies.COLUMN_ORIGINAL_TITLE, "Original title " + movieId);
+        values.put(FavoriteMovies.COLUMN_TITLE, "Title " + movieId);
+        values.put(FavoriteMovies.COLUMN_POSTER_PATH, "/poster" + movieId + ".jpg");
+        values.put(FavoriteMovies.COLUMN_BACKDROP_PATH, "/backdrop" + movieId + ".jpg");
+        values.put(FavoriteMovies.COLUMN_OVERVIEW, "The overview of the movie " + movieId);
+        values.put(FavoriteMovies.COLUMN_VOTE_AVERAGE, (movieId % 100) / 10f);
+        values.put(FavoriteMovies.COLUMN_RELEASE_DATE, String.valueOf(1950 + movieId % 70));
+        return values;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.loadtest;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an operation many times from a fixed number of concurrent threads, and reports the
+ * latency percentiles and the throughput.
+ */
+public class LoadTestHarness {
+    private final int concurrency;
+
+    /**
+     * The constructor
+     *
+     * @param concurrency the number of operations running at the same time
+     */
+    public LoadTestHarness(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Runs the operations and waits for all of them to complete
+     *
+     * @param name       the name of the run, used in the report
+     * @param operations the total number of operations
+     * @param operation  the operation
+     * @return the report of the run
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public Report run(String name, int operations, final Operation operation)
+            throws InterruptedException {
+        final long[] latencies = new long[operations];
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(operations);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long operationStart = System.nanoTime();
+                    boolean succeeded;
+                    try {
+                        succeeded = operation.run(index);
+                    } catch (Exception e) {
+                        succeeded = false;
+                    }
+                    latencies[index] = System.nanoTime() - operationStart;
+                    if (!succeeded) {
+                        failures.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        return new Report(name, concurrency, latencies, failures.get(), elapsed);
+    }
+
+    /**
+     * An operation under load, e.g. a single load of a page
+     */
+    public interface Operation {
+
+        /**
+         * Runs the operation once
+         *
+         * @param index the index of the operation, from 0
+         * @return true if the operation succeeded
+         * @throws Exception if the operation failed
+         */
+        boolean run(int index) throws Exception;
+    }
+
+    /**
+     * The results of a run
+     */
+    public static class Report {
+        private final String name;
+        private final int concurrency;
+        private final int operations;
+        private final int failures;
+        private final long[] sortedLatencies;
+        private final long elapsedNanos;
+
+        Report(String name, int concurrency, long[] latencies, int failures, long elapsedNanos) {
+            this.name = name;
+            this.concurrency = concurrency;
+            this.operations = latencies.length;
+            this.failures = failures;
+            this.sortedLatencies = latencies.clone();
+            Arrays.sort(this.sortedLatencies);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getOperations() {
+            return operations;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * Gets a percentile of the latencies, with the nearest-rank method
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the latency in milliseconds
+         */
+        public double getLatencyMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+            int index = Math.min(Math.max(rank - 1, 0), sortedLatencies.length - 1);
+            return sortedLatencies[index] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * Gets the number of operations completed per second
+         *
+         * @return the throughput
+         */
+        public double getThroughput() {
+            return (elapsedNanos > 0) ? operations / (elapsedNanos / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d ops, %d concurrent, %d failed, p50 %.1f ms, p95 %.1f ms, "
+                            + "p99 %.1f ms, %.1f ops/s",
+                    name, operations, concurrency, failures, getLatencyMillis(50),
+                    getLatencyMillis(95), getLatencyMillis(99), getThroughput());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * A local stand-in for api.themoviedb.org, which serves the sample responses in
+ * src/test/resources/fixtures. Point NetworkUtils to it with
+ * NetworkUtils.setApiBaseUrl(server.getBaseUrl()).
+ * <p>
+ * Latency, limited bandwidth, rate limiting (429 responses) and failures (dropped connections)
+ * can be injected. Faults are chosen with a fixed seed, so runs are repeatable.
+ */
+public class MockTmdbServer {
+    private static final long RANDOM_SEED = 42;
+    // Bandwidth limits are applied in slices of this duration
+    private static final long THROTTLE_PERIOD_MILLIS = 100;
+    private static final Pattern DETAILS_PATH = Pattern.compile("/3/movie/\\d+");
+    private static final Pattern VIDEOS_PATH = Pattern.compile("/3/movie/\\d+/videos");
+    private static final Pattern REVIEWS_PATH = Pattern.compile("/3/movie/\\d+/reviews");
+    private static final String RATE_LIMIT_BODY = "{\"status_code\":25,"
+            + "\"status_message\":\"Your request count is over the allowed limit.\"}";
+    private final MockWebServer server = new MockWebServer();
+    private final Random random = new Random(RANDOM_SEED);
+    private final Map<String, String> fixtures = new HashMap<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger rateLimitedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private volatile long latencyMillis = 0;
+    private volatile long bytesPerSecond = 0;
+    private volatile double rateLimitRate = 0;
+    private volatile int retryAfterSeconds = 1;
+    private volatile double failureRate = 0;
+
+    /**
+     * Starts the server on a local port
+     *
+     * @throws IOException if the server can't be started
+     */
+    public void start() throws IOException {
+        server.setDispatcher(new FixtureDispatcher());
+        server.start();
+    }
+
+    /**
+     * Stops the server
+     *
+     * @throws IOException if the server can't be stopped
+     */
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Gets the base url of the API served by this server
+     *
+     * @return the base url, ending with a slash
+     */
+    public String getBaseUrl() {
+        return server.url("/3/").toString();
+    }
+
+    /**
+     * Delays every response
+     *
+     * @param latency the delay before the body of every response
+     * @param unit    the unit of the delay
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        latencyMillis = unit.toMillis(latency);
+    }
+
+    /**
+     * Limits the bandwidth of every response body
+     *
+     * @param bytesPerSecond the bandwidth, 0 for no limit
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Answers a fraction of the requests with 429 Too Many Requests, as the API does when the
+     * request quota is exceeded
+     *
+     * @param rate              the fraction of requests to be rate limited, between 0 and 1
+     * @param retryAfterSeconds the value of the Retry-After header
+     */
+    public void setRateLimit(double rate, int retryAfterSeconds) {
+        this.rateLimitRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Drops the connection of a fraction of the requests, without any response
+     *
+     * @param rate the fraction of requests to fail, between 0 and 1
+     */
+    public void setFailureRate(double rate) {
+        this.failureRate = rate;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Builds the response to a request: a fault, if one is injected, or else the fixture for the
+     * requested path
+     *
+     * @param request the request
+     * @return the response
+     */
+    private MockResponse respond(RecordedRequest request) {
+        requestCount.incrementAndGet();
+
+        if (random.nextDouble() < failureRate) {
+            failedCount.incrementAndGet();
+            return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+        }
+
+        MockResponse response;
+        if (random.nextDouble() < rateLimitRate) {
+            rateLimitedCount.incrementAndGet();
+            response = new MockResponse()
+                    .setResponseCode(429)
+                    .setHeader("Retry-After", String.valueOf(retryAfterSeconds))
+                    .setBody(RATE_LIMIT_BODY);
+        } else {
+            String fixture = getFixtureName(request.getRequestUrl().encodedPath());
+            if (fixture == null) {
+                return new MockResponse().setResponseCode(404);
+            }
+            response = new MockResponse().setBody(getFixture(fixture));
+        }
+
+        response.setHeader("Content-Type", "application/json;charset=utf-8");
+        if (latencyMillis > 0) {
+            // MockWebServer 3.10 ignores the headers delay, so the body is delayed instead
+            response.setBodyDelay(latencyMillis, TimeUnit.MILLISECONDS);
+        }
+        if (bytesPerSecond > 0) {
+            response.throttleBody(
+                    Math.max(1, bytesPerSecond * THROTTLE_PERIOD_MILLIS / 1000),
+                    THROTTLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    /**
+     * Gets the name of the fixture served for a path of the API
+     *
+     * @param path the path of the request
+     * @return the name of the fixture, or null if the path is unknown
+     */
+    private static String getFixtureName(String path) {
+        if (path.equals("/3/movie/popular") || path.equals("/3/movie/top_rated")) {
+            return "movies_list_page";
+        } else if (path.equals("/3/search/movie")) {
+            return "movies_search_small";
+        } else if (DETAILS_PATH.matcher(path).matches()) {
+            return "movie_details";
+        } else if (VIDEOS_PATH.matcher(path).matches()) {
+            return "videos_large";
+        } else if (REVIEWS_PATH.matcher(path).matches()) {
+            return "reviews_large";
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a fixture from the classpath, once
+     *
+     * @param name the name of the fixture, without extension
+     * @return the content of the fixture
+     */
+    private synchronized String getFixture(String name) {
+        String fixture = fixtures.get(name);
+        if (fixture == null) {
+            fixture = readFixture(name);
+            fixtures.put(name, fixture);
+        }
+        return fixture;
+    }
+
+    private static String readFixture(String name) {
+        InputStream in = MockTmdbServer.class.getClassLoader()
+                .getResourceAsStream("fixtures/" + name + ".json");
+        if (in == null) {
+            throw new IllegalStateException("Fixture not found: " + name);
+        }
+
+        try {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                return out.toString("UTF-8");
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fixture not readable: " + name, e);
+        }
+    }
+
+    /**
+     * Dispatches every request to respond(), on the thread of the connection
+     */
+    private class FixtureDispatcher extends Dispatcher {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            return respond(request);
+        }
+    }
+}
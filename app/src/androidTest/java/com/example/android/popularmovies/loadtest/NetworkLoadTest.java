@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.loadtest;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.popularmovies.R;
+import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.loaders.MovieDetailLoader;
+import com.example.android.popularmovies.loaders.MoviesListLoader;
+import com.example.android.popularmovies.loaders.MoviesPageCache;
+import com.example.android.popularmovies.utils.NetworkUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load tests of the network layer, run against the local MockTmdbServer. Every test drives many
+ * concurrent list (or detail) loads through the real loaders and logs the latency percentiles
+ * and the throughput, with the tag NetworkLoadTest.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NetworkLoadTest {
+    private static final String TAG = NetworkLoadTest.class.getSimpleName();
+    private static final int CONCURRENCY = 8;
+    private static final int LIST_LOADS = 200;
+    private static final int DETAIL_LOADS = 50;
+    private Context context;
+    private MockTmdbServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getTargetContext();
+
+        server = new MockTmdbServer();
+        server.start();
+        NetworkUtils.setApiBaseUrl(server.getBaseUrl());
+
+        // Every load must go to the (mock) network
+        NetworkUtils.clearHttpCache();
+        MoviesPageCache.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        NetworkUtils.setApiBaseUrl(null);
+        NetworkUtils.clearHttpCache();
+        MoviesPageCache.clear();
+        server.shutdown();
+    }
+
+    @Test
+    public void listLoads_fastNetwork() throws Exception {
+        LoadTestHarness.Report report = runListLoads("list, fast network");
+
+        assertEquals(0, report.getFailures());
+    }
+
+    @Test
+    public void listLoads_slowNetwork() throws Exception {
+        server.setLatency(300, TimeUnit.MILLISECONDS);
+        server.setBandwidth(64 * 1024);
+
+        LoadTestHarness.Report report = runListLoads("list, slow network");
+
+        assertEquals(0, report.getFailures());
+    }
+
+    @Test
+    public void listLoads_degradedServer() throws Exception {
+        server.setLatency(100, TimeUnit.MILLISECONDS);
+        server.setRateLimit(0.1, 1);
+        server.setFailureRate(0.05);
+
+        LoadTestHarness.Report report = runListLoads("list, degraded server");
+        Log.i(TAG, "rate limited: " + server.getRateLimitedCount()
+                + ", dropped: " + server.getFailedCount()
+                + ", requests: " + server.getRequestCount());
+
+        assertTrue(report.getFailures() < report.getOperations());
+    }
+
+    @Test
+    public void detailLoads_slowNetwork() throws Exception {
+        server.setLatency(200, TimeUnit.MILLISECONDS);
+        server.setBandwidth(128 * 1024);
+
+        LoadTestHarness harness = new LoadTestHarness(CONCURRENCY);
+        LoadTestHarness.Report report = harness.run("detail, slow network", DETAIL_LOADS,
+                new LoadTestHarness.Operation() {
+                    @Override
+                    public boolean run(int index) {
+                        // A different movie every time, so that no request is shared
+                        Movie movie = new Movie(1000 + index, "Title", "Title", "/poster.jpg",
+                                "/backdrop.jpg", "Overview", 7.5, "2018-05-04");
+                        Movie loaded = new MovieDetailLoader(context, movie, false)
+                                .loadInBackground();
+                        return (loaded != null) && (loaded.getVideos() != null)
+                                && (loaded.getReviews() != null);
+                    }
+                });
+        Log.i(TAG, report.toString());
+
+        assertEquals(0, report.getFailures());
+    }
+
+    /**
+     * Loads LIST_LOADS different pages of the popular movies, CONCURRENCY at a time
+     *
+     * @param name the name of the run
+     * @return the report of the run
+     * @throws InterruptedException if the test is interrupted
+     */
+    private LoadTestHarness.Report runListLoads(String name) throws InterruptedException {
+        final String popular = context.getString(R.string.pref_movies_selection_popular);
+
+        LoadTestHarness harness = new LoadTestHarness(CONCURRENCY);
+        LoadTestHarness.Report report = harness.run(name, LIST_LOADS,
+                new LoadTestHarness.Operation() {
+                    @Override
+                    public boolean run(int index) {
+                        // A different page every time, so that no request is shared or cached
+                        MoviesListLoader loader = new MoviesListLoader(context,
+                                NetworkUtils.QUERY_LIST, null, popular, index + 1, false);
+                        return loader.loadInBackground() != null;
+                    }
+                });
+        Log.i(TAG, report.toString());
+        return report;
+    }
+}
@@ -73,6 +73,7 @@ public class DetailActivity extends AppCompatActivity implements
     public static final String EXTRA_MOVIE = "extra_movie";
     private static final String YOUTUBE_URL = "http://www.youtube.com/watch?v=";
     private final static int MOVIE_DETAILS_LOADER_ID = 0;
+    private final static String LOADER_ARG_REVALIDATE = "revalidate";
     private final LoaderCallbacks<Movie> callback = DetailActivity.this;
     private Movie movie;
     private String backdropUrl;
@@ -261,8 +262,9 @@ public class DetailActivity extends AppCompatActivity implements
     @NonNull
     @Override
     public Loader<Movie> onCreateLoader(int id, @Nullable Bundle args) {
-        // Create a new instance of MoviesListLoader
-        return new MovieDetailLoader(this, movie);
+        // Create a new instance of MovieDetailLoader
+        boolean revalidate = (args != null) && args.getBoolean(LOADER_ARG_REVALIDATE, false);
+        return new MovieDetailLoader(this, movie, revalidate);
     }
 
     /**
@@ -286,59 +288,94 @@ public class DetailActivity extends AppCompatActivity implements
             binding.movieDetailsCv.setVisibility(View.VISIBLE);
             binding.detailErrorNoDataTv.setVisibility(View.VISIBLE);
         } else {
-            // Initialize the RecyclerView and the LayoutManager for the videos
-            List<Video> videos = data.getVideos();
-            if ((videos != null) && (videos.size() > 0)) {
+            // The loader may deliver a partially loaded movie first: we show what is there and
+            // wait for the rest
+            if (data.isVideosLoaded()) {
+                showVideos(data.getVideos());
+            }
+
+            if (data.isReviewsLoaded()) {
+                showReviews(data.getReviews());
+            } else {
+                // While the reviews are loading, don't show the "no reviews" message
+                binding.detailErrorNoReviewsTv.setVisibility(View.GONE);
+                binding.reviewsExpandIconIv.setVisibility(View.GONE);
+            }
+
+            // Hide the ProgressBar once everything is there
+            if (data.isVideosLoaded() && data.isReviewsLoaded()) {
+                binding.loadingIndicatorPb.setVisibility(View.INVISIBLE);
+            }
+            // Show the card with the movie details
+            binding.movieDetailsCv.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * Show the videos in their RecyclerView, or a message if there are none
+     *
+     * @param videos the List of Video objects
+     */
+    private void showVideos(List<Video> videos) {
+        // Initialize the RecyclerView and the LayoutManager for the videos
+        if ((videos != null) && (videos.size() > 0)) {
+            VideosAdapter videosAdapter = (VideosAdapter) binding.videosRv.getAdapter();
+            if (videosAdapter == null) {
                 binding.videosRv.setHasFixedSize(false);
                 // Set the LayoutManager for the RecyclerView
                 LinearLayoutManager videosLayoutManager = new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false);
                 binding.videosRv.setLayoutManager(videosLayoutManager);
                 // Set the adapter
-                VideosAdapter videosAdapter = new VideosAdapter(this);
+                videosAdapter = new VideosAdapter(this);
                 binding.videosRv.setAdapter(videosAdapter);
                 binding.videosRv.setNestedScrollingEnabled(false);
-                videosAdapter.setVideos(data.getVideos());
-                binding.videosRv.setVisibility(View.VISIBLE);
-                binding.videosLabelTv.setVisibility(View.VISIBLE);
-                binding.detailErrorNoVideosTv.setVisibility(View.GONE);
-                binding.reviewsLabelTv.setVisibility(View.VISIBLE);
-                binding.detailErrorNoReviewsTv.setVisibility(View.GONE);
-                binding.reviewsExpandIconIv.setVisibility(View.VISIBLE);
-                binding.detailErrorNoDataTv.setVisibility(View.GONE);
-            } else {
-                // If there are no videos, hide the RecyclerView and label and show an error message
-                binding.videosRv.setVisibility(View.GONE);
-                binding.videosLabelTv.setVisibility(View.VISIBLE);
-                binding.detailErrorNoVideosTv.setVisibility(View.VISIBLE);
             }
+            videosAdapter.setVideos(videos);
+            binding.videosRv.setVisibility(View.VISIBLE);
+            binding.videosLabelTv.setVisibility(View.VISIBLE);
+            binding.detailErrorNoVideosTv.setVisibility(View.GONE);
+            binding.reviewsLabelTv.setVisibility(View.VISIBLE);
+            binding.detailErrorNoDataTv.setVisibility(View.GONE);
+        } else {
+            // If there are no videos, hide the RecyclerView and label and show an error message
+            binding.videosRv.setVisibility(View.GONE);
+            binding.videosLabelTv.setVisibility(View.VISIBLE);
+            binding.detailErrorNoVideosTv.setVisibility(View.VISIBLE);
+        }
+    }
 
-            // Initialize the RecyclerView and the LayoutManager for the reviews
-            List<Review> reviews = data.getReviews();
-            if ((reviews != null) && (reviews.size() > 0)) {
+    /**
+     * Show the reviews in their RecyclerView, or a message if there are none
+     *
+     * @param reviews the List of Review objects
+     */
+    private void showReviews(List<Review> reviews) {
+        // Initialize the RecyclerView and the LayoutManager for the reviews
+        if ((reviews != null) && (reviews.size() > 0)) {
+            ReviewsAdapter reviewsAdapter = (ReviewsAdapter) binding.reviewsRv.getAdapter();
+            if (reviewsAdapter == null) {
                 binding.reviewsRv.setHasFixedSize(false);
                 // Set the LayoutManager for the RecyclerView
                 LinearLayoutManager reviewsLayoutManager = new LinearLayoutManager(this);
                 binding.reviewsRv.setLayoutManager(reviewsLayoutManager);
                 // Set the adapter
-                ReviewsAdapter reviewsAdapter = new ReviewsAdapter();
+                reviewsAdapter = new ReviewsAdapter();
                 binding.reviewsRv.setAdapter(reviewsAdapter);
                 binding.reviewsRv.setNestedScrollingEnabled(false);
-                reviewsAdapter.setReviews(data.getReviews());
-                binding.reviewsLabelTv.setOnClickListener(reviewsExpandOnClickListener);
-                binding.reviewsExpandIconIv.setOnClickListener(reviewsExpandOnClickListener);
-                binding.detailErrorNoReviewsTv.setVisibility(View.GONE);
-            } else {
-                // If there are no reviews, hide the RecyclerView and label and show an error message
-                binding.reviewsRv.setVisibility(View.GONE);
-                binding.reviewsLabelTv.setVisibility(View.VISIBLE);
-                binding.reviewsExpandIconIv.setVisibility(View.GONE);
-                binding.detailErrorNoReviewsTv.setVisibility(View.VISIBLE);
             }
-
-            // Hide the ProgressBar
-            binding.loadingIndicatorPb.setVisibility(View.INVISIBLE);
-            // Show the card with the movie details
-            binding.movieDetailsCv.setVisibility(View.VISIBLE);
+            reviewsAdapter.setReviews(reviews);
+            binding.reviewsLabelTv.setOnClickListener(reviewsExpandOnClickListener);
+            binding.reviewsExpandIconIv.setOnClickListener(reviewsExpandOnClickListener);
+            binding.reviewsLabelTv.setVisibility(View.VISIBLE);
+            binding.reviewsExpandIconIv.setVisibility(View.VISIBLE);
+            binding.detailErrorNoReviewsTv.setVisibility(View.GONE);
+            binding.detailErrorNoDataTv.setVisibility(View.GONE);
+        } else {
+            // If there are no reviews, hide the RecyclerView and label and show an error message
+            binding.reviewsRv.setVisibility(View.GONE);
+            binding.reviewsLabelTv.setVisibility(View.VISIBLE);
+            binding.reviewsExpandIconIv.setVisibility(View.GONE);
+            binding.detailErrorNoReviewsTv.setVisibility(View.VISIBLE);
         }
     }
 
@@ -385,6 +422,12 @@ public class DetailActivity extends AppCompatActivity implements
         mySnackbar.setAction(R.string.undo_string, new addUndoListener());
         mySnackbar.show();
         updateFavoriteFabStatus(true);
+
+        // Store the videos and the reviews with the favorite, to show them offline next time
+        Loader<Movie> loader = getSupportLoaderManager().getLoader(MOVIE_DETAILS_LOADER_ID);
+        if (loader instanceof MovieDetailLoader) {
+            ((MovieDetailLoader) loader).saveFavoriteDetails();
+        }
     }
 
     /**
@@ -418,8 +461,11 @@ public class DetailActivity extends AppCompatActivity implements
         // Reload the image with Picasso
         loadImage(backdropUrl);
 
-        // Restart the loader
-        getSupportLoaderManager().restartLoader(MOVIE_DETAILS_LOADER_ID, null, callback);
+        // Restart the loader, revalidating the cached data with the API: what hasn't changed is
+        // neither downloaded nor parsed again
+        Bundle args = new Bundle();
+        args.putBoolean(LOADER_ARG_REVALIDATE, true);
+        getSupportLoaderManager().restartLoader(MOVIE_DETAILS_LOADER_ID, args, callback);
 
         // Signal that refresh has finished
         binding.swipeRefreshLayout.setRefreshing(false);
@@ -41,8 +41,8 @@ import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
-import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -52,13 +52,15 @@ import android.widget.Toast;
 import com.example.android.popularmovies.adapters.MovieAdapter;
 import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies;
 import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieResponse;
 import com.example.android.popularmovies.data.objects.Page;
 import com.example.android.popularmovies.databinding.ActivityMainBinding;
 import com.example.android.popularmovies.loaders.MoviesListLoader;
+import com.example.android.popularmovies.loaders.MoviesPageCache;
+import com.example.android.popularmovies.loaders.PagePrefetcher;
+import com.example.android.popularmovies.paging.PagingEngine;
 import com.example.android.popularmovies.utils.NetworkUtils;
 
-import java.util.List;
-
 /**
  * The main activity of the app. It shows a grid of movie posters. When the user taps on a movie
  * poster it transitions to a details screen with additional information about the movie.
@@ -72,18 +74,30 @@ public class MainActivity extends AppCompatActivity implements
         LoaderCallbacks,
         SharedPreferences.OnSharedPreferenceChangeListener,
         SwipeRefreshLayout.OnRefreshListener,
-        GoToPageDialogFragment.GoToPageDialogListener {
+        GoToPageDialogFragment.GoToPageDialogListener,
+        PagingEngine.Listener {
 
     private final static int COLUMNS_IN_GRID_LAYOUT_PORTRAIT = 2;
     private final static int COLUMNS_IN_GRID_LAYOUT_LANDSCAPE = 4;
     private final static int MOVIES_LIST_LOADER_ID = 0;
     private final static int MOVIES_CURSOR_LOADER_ID = 1;
+    private final static String LOADER_ARG_PAGE = "page";
+    private final static String LOADER_ARG_REVALIDATE = "revalidate";
     private SharedPreferences sharedPreferences;
     private static String moviesSelectionPreference;
     private GridLayoutManager gridLayoutManager;
     private MovieAdapter adapter;
+    private PagingEngine pagingEngine;
+    // Whether the next page requested must be revalidated with the API (after pull-to-refresh)
+    private boolean revalidateNextPage = false;
+    // The text searched in the favorite movies, or null if they are all shown
+    private String favoritesSearchText = null;
     private static final String LIFECYCLE_RV_POSITION = "rv_position_key";
     private static int rv_position = -1;
+    private static final String LIFECYCLE_PAGE = "page_key";
+    private static final String LIFECYCLE_TOTAL_PAGES = "total_pages_key";
+    // The paging state of the query shown in this activity
+    private Page actualPage;
     private ActivityMainBinding binding;
 
     /**
@@ -117,6 +131,15 @@ public class MainActivity extends AppCompatActivity implements
         adapter = new MovieAdapter(this);
         binding.moviesRv.setAdapter(adapter);
 
+        // Set the paging engine, which loads the pages while the user scrolls. If the activity is
+        // being recreated after a configuration change, the loaded pages are restored as they were
+        pagingEngine = new PagingEngine(gridLayoutManager, adapter, this);
+        binding.moviesRv.addOnScrollListener(pagingEngine);
+        Object pagingState = getLastCustomNonConfigurationInstance();
+        if (pagingState != null) {
+            pagingEngine.restoreState((PagingEngine.State) pagingState);
+        }
+
         // Initialize the default settings the first time the app is run
         PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
 
@@ -152,6 +175,13 @@ public class MainActivity extends AppCompatActivity implements
                 rv_position = savedInstanceState.getInt(LIFECYCLE_RV_POSITION);
             }
         }
+
+        // Retrieve the paging state of the query, or start from the first page
+        actualPage = new Page(1, 0);
+        if (savedInstanceState != null) {
+            actualPage.setPage(savedInstanceState.getInt(LIFECYCLE_PAGE, 1));
+            actualPage.setTotalPages(savedInstanceState.getInt(LIFECYCLE_TOTAL_PAGES, 0));
+        }
     }
 
     /**
@@ -177,67 +207,9 @@ public class MainActivity extends AppCompatActivity implements
             }
         });
 
-        // Show or hide the FABs when the user is at page start or end
-        binding.moviesRv.addOnScrollListener(new RecyclerView.OnScrollListener() {
-            @Override
-            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
-                super.onScrollStateChanged(recyclerView, newState);
-
-                // If we are on Popular movies or Top rated movies, we show the navigation buttons
-                // We don't need them on Favorite movies, as these are on one single page
-                if (!isFavoriteMovies()) {
-                    // If we are at the very end of the page, and we are not on the last page, we
-                    // only show the right button
-                    if ((gridLayoutManager.findLastVisibleItemPosition() == adapter.getItemCount() - 1)
-                            && (Page.getPage() < Page.getTotalPages())) {
-                        binding.floatingActionButtonRight.show();
-                    } else {
-                        binding.floatingActionButtonRight.hide();
-                    }
-
-                    // If we are at the very beginning of the page, and we are not on the first page,
-                    // we only show the left button
-                    if ((gridLayoutManager.findFirstVisibleItemPosition() == 0)
-                            && (Page.getPage() > 1)) {
-                        binding.floatingActionButtonLeft.show();
-                    } else {
-                        binding.floatingActionButtonLeft.hide();
-                    }
-                }
-            }
-        });
-
         // Register a listener which notifies when the preferences have been changed
         sharedPreferences.registerOnSharedPreferenceChangeListener(this);
 
-        // Set the click listeners on the left FAB
-        binding.floatingActionButtonLeft.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                if (Page.getPage() > 1) {
-                    // Navigate one page backwards
-                    Page.setPage(Page.getPage() - 1);
-                    adapter.clear();
-                    getSupportLoaderManager().restartLoader(MOVIES_LIST_LOADER_ID, null,
-                            MainActivity.this);
-                }
-            }
-        });
-
-        // Set the click listeners on the right FAB
-        binding.floatingActionButtonRight.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                if (Page.getPage() < Page.getTotalPages()) {
-                    // Navigate one page forwards
-                    Page.setPage(Page.getPage() + 1);
-                    adapter.clear();
-                    getSupportLoaderManager().restartLoader(MOVIES_LIST_LOADER_ID, null,
-                            MainActivity.this);
-                }
-            }
-        });
-
         // Set the behavior of the Navigation drawer
         binding.navView.setNavigationItemSelectedListener(
                 new NavigationView.OnNavigationItemSelectedListener() {
@@ -257,13 +229,11 @@ public class MainActivity extends AppCompatActivity implements
                                 // Clear the adapter
                                 adapter.setNotFavorites();
                                 adapter.swapCursor(null);
-                                adapter.clear();
                                 rv_position = -1;
 
-                                // Restart the loader and destroy the other loader if it is the case
+                                // Destroy the other loader if it is the case and start paging again
                                 getSupportLoaderManager().destroyLoader(MOVIES_CURSOR_LOADER_ID);
-                                getSupportLoaderManager().restartLoader(MOVIES_LIST_LOADER_ID, null,
-                                        MainActivity.this);
+                                pagingEngine.reset(actualPage.getPage());
                                 break;
 
                             case R.id.nav_popular:
@@ -276,13 +246,11 @@ public class MainActivity extends AppCompatActivity implements
                                 // Clear the adapter
                                 adapter.setNotFavorites();
                                 adapter.swapCursor(null);
-                                adapter.clear();
                                 rv_position = -1;
 
-                                // Restart the loader and destroy the other loader if it is the case
+                                // Destroy the other loader if it is the case and start paging again
                                 getSupportLoaderManager().destroyLoader(MOVIES_CURSOR_LOADER_ID);
-                                getSupportLoaderManager().restartLoader(MOVIES_LIST_LOADER_ID, null,
-                                        MainActivity.this);
+                                pagingEngine.reset(actualPage.getPage());
                                 break;
 
                             case R.id.nav_favorite:
@@ -292,9 +260,10 @@ public class MainActivity extends AppCompatActivity implements
                                         getString(R.string.pref_movies_selection_favorite));
                                 editor.apply();
 
-                                // Clear the adapter
-                                adapter.clear();
+                                // Clear the adapter and stop paging
+                                pagingEngine.clear();
                                 rv_position = -1;
+                                favoritesSearchText = null;
 
                                 // Restart the loader and destroy the other loader if it is the case
                                 getSupportLoaderManager().destroyLoader(MOVIES_LIST_LOADER_ID);
@@ -339,6 +308,20 @@ public class MainActivity extends AppCompatActivity implements
 
         // Save the position in the RecyclerView to be restored later
         outState.putInt(LIFECYCLE_RV_POSITION, rv_position);
+
+        // Save the paging state of the query
+        outState.putInt(LIFECYCLE_PAGE, actualPage.getPage());
+        outState.putInt(LIFECYCLE_TOTAL_PAGES, actualPage.getTotalPages());
+    }
+
+    /**
+     * Keep the pages loaded by the paging engine across configuration changes
+     *
+     * @return the state of the paging engine
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return pagingEngine.saveState();
     }
 
     /**
@@ -353,7 +336,11 @@ public class MainActivity extends AppCompatActivity implements
         // Also, in this way, the scroll position in the RecyclerView gets maintained.
         if (isFavoriteMovies()) {
             getSupportLoaderManager().initLoader(MOVIES_CURSOR_LOADER_ID, null, MainActivity.this);
-        } else {
+        } else if (pagingEngine.isEmpty()) {
+            // Nothing loaded yet, start paging from the actual page
+            pagingEngine.reset(actualPage.getPage());
+        } else if (getSupportLoaderManager().getLoader(MOVIES_LIST_LOADER_ID) != null) {
+            // Reconnect to the loader, in case a page was being loaded
             getSupportLoaderManager().initLoader(MOVIES_LIST_LOADER_ID, null, MainActivity.this);
         }
     }
@@ -390,7 +377,7 @@ public class MainActivity extends AppCompatActivity implements
      * Actions to be taken when we start loading (either through the MovieListLoader, or through a new CursorLoader
      *
      * @param id   the loader id
-     * @param args the args, not used
+     * @param args the args, containing the page to be loaded by the MoviesListLoader
      * @return a new loader
      */
     @NonNull
@@ -398,22 +385,36 @@ public class MainActivity extends AppCompatActivity implements
     public Loader onCreateLoader(int id, Bundle args) {
         switch (id) {
             case MOVIES_LIST_LOADER_ID:
-                // Hide the RecyclerView and show the ProgressBar
-                binding.moviesRv.setVisibility(View.INVISIBLE);
-                binding.loadingIndicatorPb.setVisibility(View.VISIBLE);
+                // Hide the RecyclerView and show the ProgressBar, but only if there is nothing
+                // to be shown yet. Otherwise the page is loaded while the user goes on scrolling
+                if (pagingEngine.isEmpty()) {
+                    binding.moviesRv.setVisibility(View.INVISIBLE);
+                    binding.loadingIndicatorPb.setVisibility(View.VISIBLE);
+                }
 
                 // Create a new instance of MoviesListLoader
+                int page = (args != null)
+                        ? args.getInt(LOADER_ARG_PAGE, actualPage.getPage())
+                        : actualPage.getPage();
+                boolean revalidate = (args != null)
+                        && args.getBoolean(LOADER_ARG_REVALIDATE, false);
                 return new MoviesListLoader(this, NetworkUtils.QUERY_LIST, null,
-                        moviesSelectionPreference);
+                        moviesSelectionPreference, page, revalidate);
 
             case MOVIES_CURSOR_LOADER_ID:
-                // Hide the RecyclerView and show the ProgressBar
-                binding.moviesRv.setVisibility(View.INVISIBLE);
-                binding.loadingIndicatorPb.setVisibility(View.VISIBLE);
+                // Hide the RecyclerView and show the ProgressBar, unless the user is typing a
+                // search, whose results replace the actual ones as soon as they are ready
+                boolean isSearching = !TextUtils.isEmpty(favoritesSearchText);
+                if (!isSearching) {
+                    binding.moviesRv.setVisibility(View.INVISIBLE);
+                    binding.loadingIndicatorPb.setVisibility(View.VISIBLE);
+                }
 
-                // Create a new CursorLoader
+                // Create a new CursorLoader, which searches the favorites through their
+                // full-text index
                 return new CursorLoader(this,
-                        FavoriteMovies.CONTENT_URI,
+                        isSearching ? FavoriteMovies.buildSearchUri(favoritesSearchText)
+                                : FavoriteMovies.CONTENT_URI,
                         null,
                         null,
                         null,
@@ -433,8 +434,11 @@ public class MainActivity extends AppCompatActivity implements
         if (isFavoriteMovies()) {
             getSupportLoaderManager().initLoader(MOVIES_CURSOR_LOADER_ID, null, MainActivity.this);
         } else {
-            adapter.clear();
-            getSupportLoaderManager().restartLoader(MOVIES_LIST_LOADER_ID, null, MainActivity.this);
+            // Drop the prefetched pages, so that they get loaded again
+            MoviesPageCache.clear();
+            // Revalidate the page with the API: if it hasn't changed, it is not downloaded again
+            revalidateNextPage = true;
+            pagingEngine.reset(actualPage.getPage());
         }
 
         // Signal that refresh has finished
@@ -451,31 +455,40 @@ public class MainActivity extends AppCompatActivity implements
     public void onLoadFinished(@NonNull Loader loader, Object data) {
         switch (loader.getId()) {
             case MOVIES_LIST_LOADER_ID:
-                // Hide the ProgressBar and the right FAB
+                // Hide the ProgressBar
                 binding.loadingIndicatorPb.setVisibility(View.INVISIBLE);
-                binding.floatingActionButtonRight.hide();
-                // Pass the movies to the adapter. If there is no data, show an error message
-                // Hide or show the FABs according to the situation
-                // noinspection unchecked
-                adapter.setMovies((List<Movie>) data);
+                int page = ((MoviesListLoader) loader).getPage();
                 if (data == null) {
-                    binding.floatingActionButtonLeft.hide();
-                    binding.actualPagesTv.setVisibility(View.GONE);
-                    binding.moviesRv.setVisibility(View.INVISIBLE);
-                    binding.errorMessageTv.setText(R.string.error_message_no_movies);
-                    binding.errorMessageTv.setVisibility(View.VISIBLE);
-                } else {
-                    // If we are at page 1 there is no need for a left FAB
-                    if (Page.getPage() == 1) {
-                        binding.floatingActionButtonLeft.hide();
+                    // Let the user retry by scrolling again. If there is no data at all, show an
+                    // error message
+                    pagingEngine.onPageFailed(page);
+                    if (pagingEngine.isEmpty()) {
                         binding.actualPagesTv.setVisibility(View.GONE);
+                        binding.moviesRv.setVisibility(View.INVISIBLE);
+                        binding.errorMessageTv.setText(R.string.error_message_no_movies);
+                        binding.errorMessageTv.setVisibility(View.VISIBLE);
+                    }
+                } else {
+                    // Keep the paging state of the query and pass the page to the paging engine,
+                    // which adds it to the adapter. A stale page is shown while the actual one is
+                    // loaded, which then only updates what has changed
+                    MoviesListLoader.LoadedPage loadedPage = (MoviesListLoader.LoadedPage) data;
+                    MovieResponse moviesPage = loadedPage.getMoviesPage();
+                    actualPage.setTotalPages(moviesPage.getTotalPages());
+                    if (loadedPage.isStale()) {
+                        pagingEngine.onStalePageLoaded(page, moviesPage.getMovies(),
+                                moviesPage.getTotalPages());
+                    } else if (loadedPage.isUnchanged()) {
+                        pagingEngine.onStalePageConfirmed(page);
+                    } else {
+                        pagingEngine.onPageLoaded(page, moviesPage.getMovies(),
+                                moviesPage.getTotalPages());
                     }
+
                     // Show the RecyclerView and hide the error message
                     binding.errorMessageTv.setVisibility(View.INVISIBLE);
                     binding.moviesRv.setVisibility(View.VISIBLE);
-                    binding.actualPagesTv.setText(getString(R.string.actual_page, Page.getPage(),
-                            Page.getTotalPages()));
-                    binding.actualPagesTv.setVisibility(View.VISIBLE);
+                    showActualPage();
 
                     // If a position has been saved and retrieved, set the actual position in the
                     // RecyclerView to that position
@@ -483,19 +496,23 @@ public class MainActivity extends AppCompatActivity implements
                         binding.moviesRv.smoothScrollToPosition(rv_position);
                         rv_position = -1;
                     }
+
+                    // Prefetch the pages next to the ones already loaded
+                    PagePrefetcher.getInstance(this).prefetchAdjacentPages(NetworkUtils.QUERY_LIST,
+                            moviesSelectionPreference, null, page, pagingEngine.getTotalPages());
                 }
                 break;
             case MOVIES_CURSOR_LOADER_ID:
                 adapter.swapCursor((Cursor) data);
                 adapter.setFavorites();
                 binding.loadingIndicatorPb.setVisibility(View.INVISIBLE);
-                binding.floatingActionButtonLeft.hide();
-                binding.floatingActionButtonRight.hide();
                 binding.actualPagesTv.setVisibility(View.GONE);
                 if (((Cursor) data).getCount() == 0) {
                     // If there is no movie in database hide the RecyclerView and show a message
                     binding.moviesRv.setVisibility(View.INVISIBLE);
-                    binding.errorMessageTv.setText(R.string.error_message_no_favorite_movies);
+                    binding.errorMessageTv.setText(TextUtils.isEmpty(favoritesSearchText)
+                            ? R.string.error_message_no_favorite_movies
+                            : R.string.error_message_no_matching_favorite_movies);
                     binding.errorMessageTv.setVisibility(View.VISIBLE);
                 } else {
                     // Show the RecyclerView
@@ -538,8 +555,7 @@ public class MainActivity extends AppCompatActivity implements
 
         // If we are not in favorite movies, set page to 1
         if (!isFavoriteMovies()) {
-            Page.setPage(1);
-            binding.floatingActionButtonRight.hide();
+            actualPage.setPage(1);
         }
 
         // Set the title in the ActionBar
@@ -563,17 +579,26 @@ public class MainActivity extends AppCompatActivity implements
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String queryString) {
+                // The favorite movies are searched in place, while typing
+                if (isFavoriteMovies()) {
+                    searchFavorites(queryString);
+                    return true;
+                }
+
                 Context context = MainActivity.this;
                 Class destinationClass = SearchActivity.class;
                 Intent intent = new Intent(context, destinationClass);
                 intent.putExtra(SearchActivity.EXTRA_QUERY_STRING, queryString);
-                Page.setSearchPage(1);
                 startActivity(intent);
                 return false;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
+                if (isFavoriteMovies()) {
+                    searchFavorites(newText);
+                    return true;
+                }
                 return false;
             }
         });
@@ -581,6 +606,22 @@ public class MainActivity extends AppCompatActivity implements
         return true;
     }
 
+    /**
+     * Show only the favorite movies which match a search, restarting the loader
+     *
+     * @param searchText the text to be searched, or an empty one to show all the favorite movies
+     */
+    private void searchFavorites(String searchText) {
+        String trimmedText = (searchText != null) ? searchText.trim() : "";
+        if (trimmedText.equals((favoritesSearchText != null) ? favoritesSearchText : "")) {
+            return;
+        }
+
+        favoritesSearchText = trimmedText.isEmpty() ? null : trimmedText;
+        getSupportLoaderManager().restartLoader(MOVIES_CURSOR_LOADER_ID, null,
+                MainActivity.this);
+    }
+
     /**
      * Manage the selection of menu options
      *
@@ -612,18 +653,54 @@ public class MainActivity extends AppCompatActivity implements
      */
     @Override
     public void onSelectingPageNumber(int pageNumber) {
-        if ((pageNumber >= 1) && (pageNumber <= Page.getTotalPages())) {
+        if (actualPage.isValidPage(pageNumber)) {
             // Set the actual page as from the user input and restart the loader
             // to show the page the user chose
-            Page.setPage(pageNumber);
-            adapter.clear();
-            getSupportLoaderManager().restartLoader(MOVIES_LIST_LOADER_ID, null, MainActivity.this);
+            actualPage.setPage(pageNumber);
+            pagingEngine.reset(pageNumber);
         } else {
             // If the number was not in the available range, show an error message
             Toast.makeText(this, R.string.no_page_error, Toast.LENGTH_LONG).show();
         }
     }
 
+    /**
+     * Load a page requested by the paging engine
+     *
+     * @param page the page number
+     */
+    @Override
+    public void onPageRequested(int page) {
+        Bundle args = new Bundle();
+        args.putInt(LOADER_ARG_PAGE, page);
+        args.putBoolean(LOADER_ARG_REVALIDATE, revalidateNextPage);
+        revalidateNextPage = false;
+        getSupportLoaderManager().restartLoader(MOVIES_LIST_LOADER_ID, args, MainActivity.this);
+    }
+
+    /**
+     * Keep track of the page the user is looking at
+     *
+     * @param page the page number
+     */
+    @Override
+    public void onVisiblePageChanged(int page) {
+        actualPage.setPage(page);
+        showActualPage();
+    }
+
+    /**
+     * Show the page the user is looking at and the total number of pages available
+     */
+    private void showActualPage() {
+        if (pagingEngine.isEmpty()) {
+            return;
+        }
+        binding.actualPagesTv.setText(getString(R.string.actual_page,
+                pagingEngine.getVisiblePage(), pagingEngine.getTotalPages()));
+        binding.actualPagesTv.setVisibility(View.VISIBLE);
+    }
+
     /**
      * Change the title in the action bar depending on which section (top rated, popular or favorites
      * we are in.
@@ -34,39 +34,50 @@ import android.support.v4.content.Loader;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
-import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.Toast;
 
 import com.example.android.popularmovies.adapters.MovieAdapter;
 import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieResponse;
 import com.example.android.popularmovies.data.objects.Page;
 import com.example.android.popularmovies.databinding.ActivitySearchBinding;
 import com.example.android.popularmovies.loaders.MoviesListLoader;
+import com.example.android.popularmovies.loaders.MoviesPageCache;
+import com.example.android.popularmovies.loaders.PagePrefetcher;
+import com.example.android.popularmovies.paging.PagingEngine;
 import com.example.android.popularmovies.utils.NetworkUtils;
 
-import java.util.List;
-
 /**
  * An activity in which search results are shown. It is similar to MainActivity, but the list of
  * movies is the result of a search.
  */
 public class SearchActivity extends AppCompatActivity implements
         MovieAdapter.MovieAdapterOnClickHandler,
-        LoaderCallbacks<List<Movie>>,
+        LoaderCallbacks<MoviesListLoader.LoadedPage>,
         SwipeRefreshLayout.OnRefreshListener,
-        GoToPageDialogFragment.GoToPageDialogListener {
+        GoToPageDialogFragment.GoToPageDialogListener,
+        PagingEngine.Listener {
 
     public final static String EXTRA_QUERY_STRING = "extra_query_string";
     private final static int COLUMNS_IN_GRID_LAYOUT_PORTRAIT = 2;
     private final static int COLUMNS_IN_GRID_LAYOUT_LANDSCAPE = 4;
     private final static int MOVIES_SEARCH_LOADER_ID = 0;
+    private final static String LOADER_ARG_PAGE = "page";
+    private final static String LOADER_ARG_REVALIDATE = "revalidate";
     private static String queryString;
-    private final LoaderCallbacks<List<Movie>> callback = SearchActivity.this;
+    private final LoaderCallbacks<MoviesListLoader.LoadedPage> callback = SearchActivity.this;
     private GridLayoutManager gridLayoutManager;
     private MovieAdapter adapter;
+    private PagingEngine pagingEngine;
+    // Whether the next page requested must be revalidated with the API (after pull-to-refresh)
+    private boolean revalidateNextPage = false;
     private static final String LIFECYCLE_RV_POSITION = "rv_position_key";
     private static int rv_position = -1;
+    private static final String LIFECYCLE_PAGE = "page_key";
+    private static final String LIFECYCLE_TOTAL_PAGES = "total_pages_key";
+    // The paging state of the query shown in this activity
+    private Page actualPage;
     private ActivitySearchBinding binding;
 
     /**
@@ -116,6 +127,15 @@ public class SearchActivity extends AppCompatActivity implements
         adapter = new MovieAdapter(this);
         binding.moviesRv.setAdapter(adapter);
 
+        // Set the paging engine, which loads the pages while the user scrolls. If the activity is
+        // being recreated after a configuration change, the loaded pages are restored as they were
+        pagingEngine = new PagingEngine(gridLayoutManager, adapter, this);
+        binding.moviesRv.addOnScrollListener(pagingEngine);
+        Object pagingState = getLastCustomNonConfigurationInstance();
+        if (pagingState != null) {
+            pagingEngine.restoreState((PagingEngine.State) pagingState);
+        }
+
         // Retrieve the position in the RecyclerView if it was saved. This is not useful in the
         // normal situations when for example the user rotates the device while in MainActivity,
         // because the Loader and the RecyclerView are responsible for resetting the content and
@@ -131,6 +151,13 @@ public class SearchActivity extends AppCompatActivity implements
                 rv_position = savedInstanceState.getInt(LIFECYCLE_RV_POSITION);
             }
         }
+
+        // Retrieve the paging state of the query, or start from the first page
+        actualPage = new Page(1, 0);
+        if (savedInstanceState != null) {
+            actualPage.setPage(savedInstanceState.getInt(LIFECYCLE_PAGE, 1));
+            actualPage.setTotalPages(savedInstanceState.getInt(LIFECYCLE_TOTAL_PAGES, 0));
+        }
     }
 
     /**
@@ -156,57 +183,6 @@ public class SearchActivity extends AppCompatActivity implements
             }
         });
 
-        // Show or hide the FABs when the user is at page start or end
-        binding.moviesRv.addOnScrollListener(new RecyclerView.OnScrollListener() {
-            @Override
-            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
-                super.onScrollStateChanged(recyclerView, newState);
-
-                // If we are at the very end of the page, and we are not on the last page, we
-                // only show the right button
-                if ((gridLayoutManager.findLastVisibleItemPosition() == adapter.getItemCount() - 1)
-                        && (Page.getSearchPage() < Page.getSearchTotalPages())) {
-                    binding.floatingActionButtonRight.show();
-                } else {
-                    binding.floatingActionButtonRight.hide();
-                }
-
-                // If we are at the very beginning of the page, and we are not on the first page,
-                // we only show the left button
-                if ((gridLayoutManager.findFirstVisibleItemPosition() == 0)
-                        && (Page.getSearchPage() > 1)) {
-                    binding.floatingActionButtonLeft.show();
-                } else {
-                    binding.floatingActionButtonLeft.hide();
-                }
-            }
-        });
-
-        // Set the click listeners on the left FAB
-        binding.floatingActionButtonLeft.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                if (Page.getSearchPage() > 1) {
-                    // Navigate one page backwards
-                    Page.setSearchPage(Page.getSearchPage() - 1);
-                    adapter.clear();
-                    getSupportLoaderManager().restartLoader(MOVIES_SEARCH_LOADER_ID, null, callback);
-                }
-            }
-        });
-
-        // Set the click listeners on the right FAB
-        binding.floatingActionButtonRight.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                // Navigate one page forwards
-                if (Page.getSearchPage() < Page.getSearchTotalPages()) {
-                    Page.setSearchPage(Page.getSearchPage() + 1);
-                    adapter.clear();
-                    getSupportLoaderManager().restartLoader(MOVIES_SEARCH_LOADER_ID, null, callback);
-                }
-            }
-        });
     }
 
     /**
@@ -220,6 +196,20 @@ public class SearchActivity extends AppCompatActivity implements
 
         // Save the position in the RecyclerView to be restored later
         outState.putInt(LIFECYCLE_RV_POSITION, rv_position);
+
+        // Save the paging state of the query
+        outState.putInt(LIFECYCLE_PAGE, actualPage.getPage());
+        outState.putInt(LIFECYCLE_TOTAL_PAGES, actualPage.getTotalPages());
+    }
+
+    /**
+     * Keep the pages loaded by the paging engine across configuration changes
+     *
+     * @return the state of the paging engine
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return pagingEngine.saveState();
     }
 
     /**
@@ -229,11 +219,13 @@ public class SearchActivity extends AppCompatActivity implements
     protected void onResume() {
         super.onResume();
 
-        // Initialize the adapter
-        adapter.clear();
-
-        // Start or restart the loader
-        getSupportLoaderManager().initLoader(MOVIES_SEARCH_LOADER_ID, null, callback);
+        if (pagingEngine.isEmpty()) {
+            // Nothing loaded yet, start paging from the actual page
+            pagingEngine.reset(actualPage.getPage());
+        } else if (getSupportLoaderManager().getLoader(MOVIES_SEARCH_LOADER_ID) != null) {
+            // Reconnect to the loader, in case a page was being loaded
+            getSupportLoaderManager().initLoader(MOVIES_SEARCH_LOADER_ID, null, callback);
+        }
     }
 
     /**
@@ -257,18 +249,25 @@ public class SearchActivity extends AppCompatActivity implements
      * Actions to be taken when we start loading (either through the MovieListLoader, or through a new CursorLoader
      *
      * @param id   the loader id
-     * @param args the args, not used
+     * @param args the args, containing the page to be loaded
      * @return a new loader
      */
     @NonNull
     @Override
-    public Loader<List<Movie>> onCreateLoader(int id, Bundle args) {
-        // Hide the RecyclerView and show the ProgressBar
-        binding.moviesRv.setVisibility(View.INVISIBLE);
-        binding.loadingIndicatorPb.setVisibility(View.VISIBLE);
+    public Loader<MoviesListLoader.LoadedPage> onCreateLoader(int id, Bundle args) {
+        // Hide the RecyclerView and show the ProgressBar, but only if there is nothing to be
+        // shown yet. Otherwise the page is loaded while the user goes on scrolling
+        if (pagingEngine.isEmpty()) {
+            binding.moviesRv.setVisibility(View.INVISIBLE);
+            binding.loadingIndicatorPb.setVisibility(View.VISIBLE);
+        }
 
         // Create a new instance of MoviesListLoader
-        return new MoviesListLoader(this, NetworkUtils.QUERY_SEARCH, queryString, null);
+        int page = (args != null) ? args.getInt(LOADER_ARG_PAGE, actualPage.getPage())
+                : actualPage.getPage();
+        boolean revalidate = (args != null) && args.getBoolean(LOADER_ARG_REVALIDATE, false);
+        return new MoviesListLoader(this, NetworkUtils.QUERY_SEARCH, queryString, null, page,
+                revalidate);
     }
 
     /**
@@ -276,8 +275,13 @@ public class SearchActivity extends AppCompatActivity implements
      */
     @Override
     public void onRefresh() {
-        // Restart the loader
-        getSupportLoaderManager().restartLoader(MOVIES_SEARCH_LOADER_ID, null, callback);
+        // Drop the prefetched pages, so that they get loaded again
+        MoviesPageCache.clear();
+        // Revalidate the page with the API: if it hasn't changed, it is not downloaded again
+        revalidateNextPage = true;
+
+        // Start paging again from the actual page
+        pagingEngine.reset(actualPage.getPage());
 
         // Signal that refresh has finished
         binding.swipeRefreshLayout.setRefreshing(false);
@@ -290,29 +294,41 @@ public class SearchActivity extends AppCompatActivity implements
      * @param data   the data returned from the loader
      */
     @Override
-    public void onLoadFinished(@NonNull Loader<List<Movie>> loader, List<Movie> data) {
-        // Hide the ProgressBar and the right FAB
+    public void onLoadFinished(@NonNull Loader<MoviesListLoader.LoadedPage> loader,
+                               MoviesListLoader.LoadedPage data) {
+        // Hide the ProgressBar
         binding.loadingIndicatorPb.setVisibility(View.INVISIBLE);
-        binding.floatingActionButtonRight.hide();
-        // Pass the movies to the adapter. If there is no data, show an error message
-        // Hide or show the FABs according to the situation
-        adapter.setMovies(data);
+        int page = ((MoviesListLoader) loader).getPage();
         if (data == null) {
-            binding.floatingActionButtonLeft.hide();
-            binding.actualPagesTv.setVisibility(View.INVISIBLE);
-            binding.moviesRv.setVisibility(View.INVISIBLE);
-            binding.errorMessageTv.setText(R.string.no_movies_found);
-            binding.errorMessageTv.setVisibility(View.VISIBLE);
+            // Let the user retry by scrolling again. If there is no data at all, show an error
+            // message
+            pagingEngine.onPageFailed(page);
+            if (pagingEngine.isEmpty()) {
+                binding.actualPagesTv.setVisibility(View.INVISIBLE);
+                binding.moviesRv.setVisibility(View.INVISIBLE);
+                binding.errorMessageTv.setText(R.string.no_movies_found);
+                binding.errorMessageTv.setVisibility(View.VISIBLE);
+            }
         } else {
-            // If we are at page 1 there is no need for a left FAB
-            if (Page.getSearchPage() == 1) {
-                binding.floatingActionButtonLeft.hide();
+            // Keep the paging state of the query and pass the page to the paging engine, which
+            // adds it to the adapter. A stale page is shown while the actual one is loaded, which
+            // then only updates what has changed
+            MovieResponse moviesPage = data.getMoviesPage();
+            actualPage.setTotalPages(moviesPage.getTotalPages());
+            if (data.isStale()) {
+                pagingEngine.onStalePageLoaded(page, moviesPage.getMovies(),
+                        moviesPage.getTotalPages());
+            } else if (data.isUnchanged()) {
+                pagingEngine.onStalePageConfirmed(page);
+            } else {
+                pagingEngine.onPageLoaded(page, moviesPage.getMovies(),
+                        moviesPage.getTotalPages());
             }
+
             binding.moviesRv.setVisibility(View.VISIBLE);
             binding.errorMessageTv.setVisibility(View.INVISIBLE);
             // Set the values of actual page and total pages and show the TextView
-            binding.actualPagesTv.setText(getString(R.string.actual_page, Page.getSearchPage(), Page.getSearchTotalPages()));
-            binding.actualPagesTv.setVisibility(View.VISIBLE);
+            showActualPage();
 
             // If a position has been saved and retrieved, set the actual position in the
             // RecyclerView to that position
@@ -320,6 +336,10 @@ public class SearchActivity extends AppCompatActivity implements
                 binding.moviesRv.smoothScrollToPosition(rv_position);
                 rv_position = -1;
             }
+
+            // Prefetch the pages next to the ones already loaded
+            PagePrefetcher.getInstance(this).prefetchAdjacentPages(NetworkUtils.QUERY_SEARCH,
+                    null, queryString, page, pagingEngine.getTotalPages());
         }
     }
 
@@ -329,7 +349,7 @@ public class SearchActivity extends AppCompatActivity implements
      * @param loader the loader to be reset
      */
     @Override
-    public void onLoaderReset(@NonNull Loader<List<Movie>> loader) {
+    public void onLoaderReset(@NonNull Loader<MoviesListLoader.LoadedPage> loader) {
         // Not implemented
     }
 
@@ -349,16 +369,51 @@ public class SearchActivity extends AppCompatActivity implements
      */
     @Override
     public void onSelectingPageNumber(int pageNumber) {
-        if ((pageNumber >= 1) && (pageNumber <= Page.getSearchTotalPages())) {
+        if (actualPage.isValidPage(pageNumber)) {
             // Set the actual page as from the user input and restart the loader
             // to show the page the user chose
-            Page.setSearchPage(pageNumber);
-            adapter.clear();
-            getSupportLoaderManager().restartLoader(MOVIES_SEARCH_LOADER_ID, null, callback);
+            actualPage.setPage(pageNumber);
+            pagingEngine.reset(pageNumber);
         } else {
             // If the number was not in the available range, show an error message
             Toast.makeText(this, R.string.no_page_error, Toast.LENGTH_LONG).show();
         }
     }
-}
 
+    /**
+     * Load a page requested by the paging engine
+     *
+     * @param page the page number
+     */
+    @Override
+    public void onPageRequested(int page) {
+        Bundle args = new Bundle();
+        args.putInt(LOADER_ARG_PAGE, page);
+        args.putBoolean(LOADER_ARG_REVALIDATE, revalidateNextPage);
+        revalidateNextPage = false;
+        getSupportLoaderManager().restartLoader(MOVIES_SEARCH_LOADER_ID, args, callback);
+    }
+
+    /**
+     * Keep track of the page the user is looking at
+     *
+     * @param page the page number
+     */
+    @Override
+    public void onVisiblePageChanged(int page) {
+        actualPage.setPage(page);
+        showActualPage();
+    }
+
+    /**
+     * Show the page the user is looking at and the total number of pages available
+     */
+    private void showActualPage() {
+        if (pagingEngine.isEmpty()) {
+            return;
+        }
+        binding.actualPagesTv.setText(getString(R.string.actual_page,
+                pagingEngine.getVisiblePage(), pagingEngine.getTotalPages()));
+        binding.actualPagesTv.setVisibility(View.VISIBLE);
+    }
+}
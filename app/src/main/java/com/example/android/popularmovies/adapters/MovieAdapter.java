@@ -25,7 +25,11 @@ package com.example.android.popularmovies.adapters;
 import android.content.Context;
 import android.database.Cursor;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -36,6 +40,8 @@ import com.example.android.popularmovies.databinding.MovieGridItemBinding;
 import com.example.android.popularmovies.utils.NetworkUtils;
 import com.squareup.picasso.Picasso;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -140,13 +146,136 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapter
     }
 
     /**
-     * Sets the List of Movie objects and notify that the data set has changed
+     * Gets the List of Movie objects in the adapter
      *
-     * @param movies the List of Movie objects
+     * @return the List of Movie objects, never null
      */
-    public void setMovies(List<Movie> movies) {
-        this.movies = movies;
-        notifyDataSetChanged();
+    public List<Movie> getMovies() {
+        if (movies == null) {
+            return Collections.emptyList();
+        }
+        return movies;
+    }
+
+    /**
+     * Adds movies at the end of the data set
+     *
+     * @param newMovies the List of Movie objects to be added
+     */
+    public void appendMovies(List<Movie> newMovies) {
+        if (movies == null) {
+            movies = new ArrayList<>();
+        }
+        int start = movies.size();
+        movies.addAll(newMovies);
+        notifyItemRangeInserted(start, newMovies.size());
+    }
+
+    /**
+     * Adds movies at the beginning of the data set
+     *
+     * @param newMovies the List of Movie objects to be added
+     */
+    public void prependMovies(List<Movie> newMovies) {
+        if (movies == null) {
+            movies = new ArrayList<>();
+        }
+        movies.addAll(0, newMovies);
+        notifyItemRangeInserted(0, newMovies.size());
+    }
+
+    /**
+     * Replaces a range of movies (e.g. a page which has been reloaded), notifying only the movies
+     * which have been added, removed, moved or changed
+     *
+     * @param start     the position of the first movie to be replaced
+     * @param count     the number of movies to be replaced
+     * @param newMovies the List of Movie objects which replace them
+     */
+    public void updateMovies(final int start, int count, final List<Movie> newMovies) {
+        if (movies == null) {
+            return;
+        }
+
+        List<Movie> range = movies.subList(start, start + count);
+        final List<Movie> oldMovies = new ArrayList<>(range);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldMovies.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newMovies.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldMovies.get(oldItemPosition).getMovieId()
+                        == newMovies.get(newItemPosition).getMovieId();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return hasSameContents(oldMovies.get(oldItemPosition),
+                        newMovies.get(newItemPosition));
+            }
+        });
+
+        range.clear();
+        range.addAll(newMovies);
+
+        // The positions of the diff are relative to the replaced range
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(start + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(start + position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(start + fromPosition, start + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                notifyItemRangeChanged(start + position, count, payload);
+            }
+        });
+    }
+
+    /**
+     * Checks if two movies are shown in the same way
+     *
+     * @param oldMovie the old movie
+     * @param newMovie the new movie
+     * @return true if the data shown in the grid is the same
+     */
+    private static boolean hasSameContents(Movie oldMovie, Movie newMovie) {
+        return TextUtils.equals(oldMovie.getPosterImageUrl(), newMovie.getPosterImageUrl())
+                && TextUtils.equals(oldMovie.getTitle(), newMovie.getTitle())
+                && TextUtils.equals(oldMovie.getReleaseDate(), newMovie.getReleaseDate())
+                && (oldMovie.getUserRating() == newMovie.getUserRating());
+    }
+
+    /**
+     * Removes a range of movies from the data set
+     *
+     * @param start the position of the first movie to be removed
+     * @param count the number of movies to be removed
+     */
+    public void removeMovies(int start, int count) {
+        if (movies == null) {
+            return;
+        }
+        movies.subList(start, start + count).clear();
+        notifyItemRangeRemoved(start, count);
     }
 
     public void setFavorites() {
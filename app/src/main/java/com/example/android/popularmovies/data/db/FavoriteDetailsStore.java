@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies;
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteReviews;
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteVideos;
+import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.Review;
+import com.example.android.popularmovies.data.objects.ReviewResponse;
+import com.example.android.popularmovies.data.objects.Video;
+import com.example.android.popularmovies.data.objects.VideoResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the videos and the reviews of the favorite movies, through the
+ * FavoriteMoviesContentProvider, so that the details of a favorite can be shown without the
+ * network.
+ * <p>
+ * All the methods access the database, so they must not be called on the main thread.
+ */
+public class FavoriteDetailsStore {
+
+    // Private constructor, which we use to avoid instantiating this class
+    private FavoriteDetailsStore() {
+    }
+
+    /**
+     * Reads the stored videos and reviews of a movie into it
+     *
+     * @param contentResolver the ContentResolver
+     * @param movie           the movie, which gets its videos and reviews
+     * @return true if the movie is a favorite with stored videos and reviews
+     */
+    @WorkerThread
+    public static boolean loadDetails(ContentResolver contentResolver, Movie movie) {
+        int movieId = movie.getMovieId();
+        if (!isSaved(contentResolver, movieId)) {
+            return false;
+        }
+
+        List<Video> videos = new ArrayList<>();
+        Cursor videosCursor = contentResolver.query(FavoriteVideos.buildVideosUri(movieId),
+                null, null, null, null);
+        if (videosCursor == null) {
+            return false;
+        }
+        try {
+            int idIndex = videosCursor.getColumnIndex(FavoriteVideos.COLUMN_VIDEO_ID);
+            int keyIndex = videosCursor.getColumnIndex(FavoriteVideos.COLUMN_KEY);
+            int nameIndex = videosCursor.getColumnIndex(FavoriteVideos.COLUMN_NAME);
+            int siteIndex = videosCursor.getColumnIndex(FavoriteVideos.COLUMN_SITE);
+            int typeIndex = videosCursor.getColumnIndex(FavoriteVideos.COLUMN_TYPE);
+            while (videosCursor.moveToNext()) {
+                videos.add(new Video(videosCursor.getString(idIndex),
+                        videosCursor.getString(keyIndex),
+                        videosCursor.getString(nameIndex),
+                        videosCursor.getString(siteIndex),
+                        videosCursor.getString(typeIndex)));
+            }
+        } finally {
+            videosCursor.close();
+        }
+
+        List<Review> reviews = new ArrayList<>();
+        Cursor reviewsCursor = contentResolver.query(FavoriteReviews.buildReviewsUri(movieId),
+                null, null, null, null);
+        if (reviewsCursor == null) {
+            return false;
+        }
+        try {
+            int idIndex = reviewsCursor.getColumnIndex(FavoriteReviews.COLUMN_REVIEW_ID);
+            int authorIndex = reviewsCursor.getColumnIndex(FavoriteReviews.COLUMN_AUTHOR);
+            int contentIndex = reviewsCursor.getColumnIndex(FavoriteReviews.COLUMN_CONTENT);
+            int urlIndex = reviewsCursor.getColumnIndex(FavoriteReviews.COLUMN_URL);
+            while (reviewsCursor.moveToNext()) {
+                reviews.add(new Review(reviewsCursor.getString(idIndex),
+                        reviewsCursor.getString(authorIndex),
+                        reviewsCursor.getString(contentIndex),
+                        reviewsCursor.getString(urlIndex)));
+            }
+        } finally {
+            reviewsCursor.close();
+        }
+
+        // Only the first page of reviews is shown, and stored
+        movie.setVideos(new VideoResponse(videos));
+        movie.setReviews(new ReviewResponse(1, 1, reviews));
+        return true;
+    }
+
+    /**
+     * Stores the videos and the reviews of a movie, replacing the stored ones, if the movie is a
+     * favorite
+     *
+     * @param contentResolver the ContentResolver
+     * @param movie           the movie, with its videos and reviews loaded
+     */
+    @WorkerThread
+    public static void saveDetails(ContentResolver contentResolver, Movie movie) {
+        int movieId = movie.getMovieId();
+        Uri favoriteUri = FavoriteMovies.buildFavoriteUri(movieId);
+        if (!isFavorite(contentResolver, favoriteUri)) {
+            return;
+        }
+
+        // Replace the details and mark them as stored in a single transaction, so that they are
+        // never read half written, and the favorites are notified once
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+
+        Uri videosUri = FavoriteVideos.buildVideosUri(movieId);
+        operations.add(ContentProviderOperation.newDelete(videosUri).build());
+        List<Video> videos = movie.getVideos();
+        if (videos != null) {
+            int position = 0;
+            for (Video video : videos) {
+                operations.add(ContentProviderOperation.newInsert(videosUri)
+                        .withValue(FavoriteVideos.COLUMN_POSITION, position++)
+                        .withValue(FavoriteVideos.COLUMN_VIDEO_ID, video.getId())
+                        .withValue(FavoriteVideos.COLUMN_KEY, video.getKey())
+                        .withValue(FavoriteVideos.COLUMN_NAME, video.getName())
+                        .withValue(FavoriteVideos.COLUMN_SITE, video.getSite())
+                        .withValue(FavoriteVideos.COLUMN_TYPE, video.getType())
+                        .build());
+            }
+        }
+
+        Uri reviewsUri = FavoriteReviews.buildReviewsUri(movieId);
+        operations.add(ContentProviderOperation.newDelete(reviewsUri).build());
+        List<Review> reviews = movie.getReviews();
+        if (reviews != null) {
+            int position = 0;
+            for (Review review : reviews) {
+                operations.add(ContentProviderOperation.newInsert(reviewsUri)
+                        .withValue(FavoriteReviews.COLUMN_POSITION, position++)
+                        .withValue(FavoriteReviews.COLUMN_REVIEW_ID, review.getId())
+                        .withValue(FavoriteReviews.COLUMN_AUTHOR, review.getAuthor())
+                        .withValue(FavoriteReviews.COLUMN_CONTENT, review.getContent())
+                        .withValue(FavoriteReviews.COLUMN_URL, review.getUrl())
+                        .build());
+            }
+        }
+
+        operations.add(ContentProviderOperation.newUpdate(favoriteUri)
+                .withValue(FavoriteMovies.COLUMN_DETAILS_SAVED_AT, System.currentTimeMillis())
+                .build());
+
+        try {
+            contentResolver.applyBatch(FavoriteMoviesContract.AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException | SQLException e) {
+            // E.g. the movie has just been removed from the favorites: nothing is stored
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Checks if a movie is a favorite
+     *
+     * @param contentResolver the ContentResolver
+     * @param favoriteUri     the uri of the favorite movie
+     * @return true if the movie is a favorite
+     */
+    private static boolean isFavorite(ContentResolver contentResolver, Uri favoriteUri) {
+        Cursor cursor = contentResolver.query(favoriteUri, new String[]{FavoriteMovies._ID},
+                null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Checks if the videos and the reviews of a movie are stored
+     *
+     * @param contentResolver the ContentResolver
+     * @param movieId         the id of the movie
+     * @return true if the movie is a favorite with stored videos and reviews
+     */
+    private static boolean isSaved(ContentResolver contentResolver, int movieId) {
+        Cursor cursor = contentResolver.query(FavoriteMovies.buildFavoriteUri(movieId),
+                new String[]{FavoriteMovies.COLUMN_DETAILS_SAVED_AT}, null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -23,9 +23,12 @@
 package com.example.android.popularmovies.data.db;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -33,18 +36,38 @@ import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies;
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteReviews;
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteVideos;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
 import static com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies.TABLE_NAME;
 
 /**
  * The ContentProvider which will give access to the database of favorite movies
+ * <p>
+ * bulkInsert() and applyBatch() run in a single transaction, and notify their changes once at the
+ * end, so that importing or syncing many favorites doesn't pay for a commit (and a reload of the
+ * observers) per row.
  */
 @SuppressWarnings("ConstantConditions")
 public class FavoriteMoviesContentProvider extends ContentProvider {
 
     private static final int FAVORITE_MOVIES = 100;
     private static final int FAVORITE_ID = 101;
+    private static final int FAVORITE_VIDEOS = 102;
+    private static final int FAVORITE_REVIEWS = 103;
+    private static final int FAVORITES_BY_RATING = 104;
+    private static final int FAVORITES_BY_RELEASE_DATE = 105;
+    private static final int FAVORITES_BY_TITLE = 106;
+    private static final int FAVORITES_SEARCH = 107;
     private static final UriMatcher uriMatcher = buildUriMatcher();
     private FavoriteMoviesDbHelper dbHelper;
+    // The uris changed by the batch running on the current thread, null if there is none
+    private final ThreadLocal<Set<Uri>> batchChanges = new ThreadLocal<>();
 
     private static UriMatcher buildUriMatcher() {
         UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
@@ -59,6 +82,36 @@ public class FavoriteMoviesContentProvider extends ContentProvider {
                 FavoriteMoviesContract.PATH_FAVORITE_MOVIES + "/#",
                 FAVORITE_ID);
 
+        // Add matches for the directory in a sort order
+        uriMatcher.addURI(FavoriteMoviesContract.AUTHORITY,
+                FavoriteMoviesContract.PATH_FAVORITE_MOVIES + "/" +
+                        FavoriteMoviesContract.PATH_BY_RATING,
+                FAVORITES_BY_RATING);
+        uriMatcher.addURI(FavoriteMoviesContract.AUTHORITY,
+                FavoriteMoviesContract.PATH_FAVORITE_MOVIES + "/" +
+                        FavoriteMoviesContract.PATH_BY_RELEASE_DATE,
+                FAVORITES_BY_RELEASE_DATE);
+        uriMatcher.addURI(FavoriteMoviesContract.AUTHORITY,
+                FavoriteMoviesContract.PATH_FAVORITE_MOVIES + "/" +
+                        FavoriteMoviesContract.PATH_BY_TITLE,
+                FAVORITES_BY_TITLE);
+
+        // Add match for the full-text search of the directory
+        uriMatcher.addURI(FavoriteMoviesContract.AUTHORITY,
+                FavoriteMoviesContract.PATH_FAVORITE_MOVIES + "/" +
+                        FavoriteMoviesContract.PATH_SEARCH + "/*",
+                FAVORITES_SEARCH);
+
+        // Add matches for the videos and the reviews of a single item
+        uriMatcher.addURI(FavoriteMoviesContract.AUTHORITY,
+                FavoriteMoviesContract.PATH_FAVORITE_MOVIES + "/#/" +
+                        FavoriteMoviesContract.PATH_VIDEOS,
+                FAVORITE_VIDEOS);
+        uriMatcher.addURI(FavoriteMoviesContract.AUTHORITY,
+                FavoriteMoviesContract.PATH_FAVORITE_MOVIES + "/#/" +
+                        FavoriteMoviesContract.PATH_REVIEWS,
+                FAVORITE_REVIEWS);
+
         return uriMatcher;
     }
 
@@ -71,7 +124,12 @@ public class FavoriteMoviesContentProvider extends ContentProvider {
     }
 
     /**
-     * The query() method, to retrieve all favorite movies or a single favorite movie based on its id
+     * The query() method, to retrieve all favorite movies or a single favorite movie based on its id,
+     * or the videos or the reviews of a favorite movie (in their original order).
+     * <p>
+     * The favorite movies can be filtered by year and minimum rating with the query parameters of
+     * the uri, and sorted by one of the sorted uris (whose order replaces the sort order). The search
+     * uri finds them by the words (or the starts of the words) of their titles and overviews.
      *
      * @param uri           the uri
      * @param projection    the projection
@@ -88,17 +146,20 @@ public class FavoriteMoviesContentProvider extends ContentProvider {
         int match = uriMatcher.match(uri);
 
         Cursor returnCursor;
+        Uri notificationUri = uri;
 
         switch (match) {
-            // We search for all favorite movies
+            // We search for all favorite movies, maybe filtered or sorted
             case FAVORITE_MOVIES:
-                returnCursor = db.query(TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder);
+            case FAVORITES_BY_RATING:
+            case FAVORITES_BY_RELEASE_DATE:
+            case FAVORITES_BY_TITLE:
+            case FAVORITES_SEARCH:
+                returnCursor = FavoriteMoviesQuery.fromUri(uri, selection, selectionArgs,
+                        sortOrder).query(db, projection);
+                // The changes of the movies are notified under the directory, not under the
+                // sorted uris
+                notificationUri = FavoriteMovies.CONTENT_URI;
                 break;
             // We search for a single movie, based on its id
             case FAVORITE_ID:
@@ -111,11 +172,31 @@ public class FavoriteMoviesContentProvider extends ContentProvider {
                         null,
                         sortOrder);
                 break;
+            // We search for the videos of a movie
+            case FAVORITE_VIDEOS:
+                returnCursor = db.query(FavoriteVideos.TABLE_NAME,
+                        projection,
+                        FavoriteVideos.COLUMN_MOVIE_ID + "=?",
+                        new String[]{uri.getPathSegments().get(1)},
+                        null,
+                        null,
+                        (sortOrder != null) ? sortOrder : FavoriteVideos.COLUMN_POSITION);
+                break;
+            // We search for the reviews of a movie
+            case FAVORITE_REVIEWS:
+                returnCursor = db.query(FavoriteReviews.TABLE_NAME,
+                        projection,
+                        FavoriteReviews.COLUMN_MOVIE_ID + "=?",
+                        new String[]{uri.getPathSegments().get(1)},
+                        null,
+                        null,
+                        (sortOrder != null) ? sortOrder : FavoriteReviews.COLUMN_POSITION);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
-        returnCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        returnCursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
 
         return returnCursor;
     }
@@ -128,7 +209,8 @@ public class FavoriteMoviesContentProvider extends ContentProvider {
     }
 
     /**
-     * The insert() method, to add a movie to the database of favorite movies
+     * The insert() method, to add a movie to the database of favorite movies, or a video or a
+     * review to a favorite movie
      *
      * @param uri the uri
      * @param contentValues the values to be inserted
@@ -153,18 +235,25 @@ public class FavoriteMoviesContentProvider extends ContentProvider {
                 }
                 break;
 
+            case FAVORITE_VIDEOS:
+            case FAVORITE_REVIEWS:
+                // The details are not observed, and notifying them would reload the list of
+                // favorites (their ancestor) for every row
+                return insertDetail(db, uri, match, contentValues);
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
         // Notify the resolver if the uri has been changed
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
 
         return returnUri;
     }
 
     /**
-     * The delete() method, to delete a single movie from the database
+     * The delete() method, to delete the selected movies or a single movie from the database (with
+     * their videos and reviews), or all the videos or the reviews of a movie
      *
      * @param uri the uri
      * @param s the selection
@@ -180,25 +269,207 @@ public class FavoriteMoviesContentProvider extends ContentProvider {
         int moviesDeleted;
 
         switch (match) {
+            case FAVORITE_MOVIES:
+                moviesDeleted = db.delete(TABLE_NAME, s, strings);
+                break;
             case FAVORITE_ID:
                 String id = uri.getPathSegments().get(1);
                 moviesDeleted = db.delete(TABLE_NAME, "_id=?", new String[]{id});
                 break;
+            case FAVORITE_VIDEOS:
+                // As for insert(), the details are not notified
+                return db.delete(FavoriteVideos.TABLE_NAME, FavoriteVideos.COLUMN_MOVIE_ID + "=?",
+                        new String[]{uri.getPathSegments().get(1)});
+            case FAVORITE_REVIEWS:
+                return db.delete(FavoriteReviews.TABLE_NAME,
+                        FavoriteReviews.COLUMN_MOVIE_ID + "=?",
+                        new String[]{uri.getPathSegments().get(1)});
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
         if (moviesDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return moviesDeleted;
     }
 
+    /**
+     * The update() method, to update the selected movies or a single movie in the database
+     *
+     * @param uri           the uri
+     * @param contentValues the new values
+     * @param s             the selection (for the directory)
+     * @param strings       the arguments (for the directory)
+     * @return the number of updated movies
+     */
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues contentValues, @Nullable String s,
                       @Nullable String[] strings) {
-        // We don't need it
-        return 0;
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        int match = uriMatcher.match(uri);
+
+        int moviesUpdated;
+
+        switch (match) {
+            case FAVORITE_MOVIES:
+                moviesUpdated = db.update(TABLE_NAME, contentValues, s, strings);
+                break;
+            case FAVORITE_ID:
+                String id = uri.getPathSegments().get(1);
+                moviesUpdated = db.update(TABLE_NAME, contentValues, "_id=?", new String[]{id});
+                break;
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+
+        if (moviesUpdated != 0) {
+            notifyChange(uri);
+        }
+
+        return moviesUpdated;
+    }
+
+    /**
+     * The bulkInsert() method, to add many movies to the favorites (those which are already there
+     * get updated), or many videos or reviews to a favorite movie, in a single transaction
+     *
+     * @param uri    the uri
+     * @param values the values to be inserted
+     * @return the number of inserted (or updated) rows
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int match = uriMatcher.match(uri);
+
+        int rowsInserted = 0;
+
+        db.beginTransaction();
+        try {
+            switch (match) {
+                case FAVORITE_MOVIES:
+                    for (ContentValues contentValues : values) {
+                        long id = db.insertWithOnConflict(TABLE_NAME, null, contentValues,
+                                SQLiteDatabase.CONFLICT_IGNORE);
+                        if (id != -1) {
+                            rowsInserted++;
+                        } else if (contentValues.containsKey(FavoriteMovies._ID)) {
+                            // Replacing the movie would delete its videos and reviews, so it is
+                            // updated instead
+                            rowsInserted += db.update(TABLE_NAME, contentValues, "_id=?",
+                                    new String[]{contentValues.getAsString(FavoriteMovies._ID)});
+                        }
+                    }
+                    break;
+
+                case FAVORITE_VIDEOS:
+                case FAVORITE_REVIEWS:
+                    for (ContentValues contentValues : values) {
+                        insertDetail(db, uri, match, contentValues);
+                        rowsInserted++;
+                    }
+                    break;
+
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // As for insert(), the details are not notified
+        if ((match == FAVORITE_MOVIES) && (rowsInserted != 0)) {
+            notifyChange(uri);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * The applyBatch() method, to apply many operations in a single transaction: either all of them
+     * are applied, or none. Their changes are notified once, when the transaction is committed.
+     *
+     * @param operations the operations
+     * @return the results of the operations
+     * @throws OperationApplicationException if an operation fails
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        Set<Uri> changes = new HashSet<>();
+        ContentProviderResult[] results;
+
+        batchChanges.set(changes);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            batchChanges.remove();
+        }
+
+        // A single change covers them all: the observers of the favorites are notified of the
+        // changes of their descendants too
+        if (changes.size() == 1) {
+            getContext().getContentResolver().notifyChange(changes.iterator().next(), null);
+        } else if (changes.size() > 1) {
+            getContext().getContentResolver().notifyChange(FavoriteMovies.CONTENT_URI, null);
+        }
+
+        return results;
+    }
+
+    /**
+     * Notifies the observers of a change, or keeps it for the end of the running batch
+     *
+     * @param uri the uri which has been changed
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> changes = batchChanges.get();
+        if (changes != null) {
+            changes.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Inserts a video or a review of a movie, which is taken from the uri
+     *
+     * @param db            the database
+     * @param uri           the uri of the videos or the reviews of the movie
+     * @param match         the match of the uri
+     * @param contentValues the values to be inserted
+     * @return the uri of the newly inserted video or review
+     */
+    private static Uri insertDetail(SQLiteDatabase db, Uri uri, int match,
+                                    @Nullable ContentValues contentValues) {
+        ContentValues values = (contentValues != null) ? new ContentValues(contentValues)
+                : new ContentValues();
+        long movieId = Long.parseLong(uri.getPathSegments().get(1));
+
+        long id;
+        if (match == FAVORITE_VIDEOS) {
+            values.put(FavoriteVideos.COLUMN_MOVIE_ID, movieId);
+            id = db.insert(FavoriteVideos.TABLE_NAME, null, values);
+        } else {
+            values.put(FavoriteReviews.COLUMN_MOVIE_ID, movieId);
+            id = db.insert(FavoriteReviews.TABLE_NAME, null, values);
+        }
+
+        // Fails also if the movie is not a favorite
+        if (id <= 0) {
+            throw new android.database.SQLException("Failed to insert row into " + uri);
+        }
+        return ContentUris.withAppendedId(uri, id);
     }
 }
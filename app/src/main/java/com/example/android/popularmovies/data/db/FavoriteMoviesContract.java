@@ -39,6 +39,24 @@ public class FavoriteMoviesContract {
     // Path for the "favorites" directory
     public static final String PATH_FAVORITE_MOVIES = "favorite_movies";
 
+    // Paths for the favorites sorted by rating (highest first), by release date (newest first) and
+    // by title
+    public static final String PATH_BY_RATING = "by_rating";
+    public static final String PATH_BY_RELEASE_DATE = "by_release_date";
+    public static final String PATH_BY_TITLE = "by_title";
+
+    // Path for the full-text search of the favorites, followed by the text to be searched
+    public static final String PATH_SEARCH = "search";
+
+    // Query parameters to filter the favorites by release year (inclusive) and by minimum rating
+    public static final String PARAM_MIN_YEAR = "min_year";
+    public static final String PARAM_MAX_YEAR = "max_year";
+    public static final String PARAM_MIN_RATING = "min_rating";
+
+    // Paths for the videos and the reviews of a favorite movie, under its own uri
+    public static final String PATH_VIDEOS = "videos";
+    public static final String PATH_REVIEWS = "reviews";
+
     // Private constructor, so that this class cannot be instantiated
     private FavoriteMoviesContract() {
     }
@@ -59,5 +77,93 @@ public class FavoriteMoviesContract {
         public static final String COLUMN_OVERVIEW = "overview";
         public static final String COLUMN_VOTE_AVERAGE = "vote_average";
         public static final String COLUMN_RELEASE_DATE = "release_date";
+        // When the videos and the reviews have been stored, null if they haven't
+        public static final String COLUMN_DETAILS_SAVED_AT = "details_saved_at";
+
+        /**
+         * Builds the uri of the favorite movies in a sort order
+         *
+         * @param sortPath the path of the sort order, e.g. PATH_BY_RATING
+         * @return the uri, to which filters can be added as query parameters
+         */
+        public static Uri buildSortedUri(String sortPath) {
+            return CONTENT_URI.buildUpon().appendPath(sortPath).build();
+        }
+
+        /**
+         * Builds the uri of the favorite movies whose title, original title or overview contain
+         * all the words of a text (or words starting with them)
+         *
+         * @param searchText the text to be searched
+         * @return the uri, to which filters can be added as query parameters
+         */
+        public static Uri buildSearchUri(String searchText) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(searchText).build();
+        }
+
+        /**
+         * Builds the uri of a single favorite movie
+         *
+         * @param movieId the id of the movie
+         * @return the uri
+         */
+        public static Uri buildFavoriteUri(long movieId) {
+            return CONTENT_URI.buildUpon().appendPath(String.valueOf(movieId)).build();
+        }
+    }
+
+    /**
+     * The videos of the favorite movies, which are deleted with their movie
+     */
+    public static class FavoriteVideos implements BaseColumns {
+        // Table name
+        public static final String TABLE_NAME = "favorite_videos";
+
+        // Name of columns
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_VIDEO_ID = "video_id";
+        public static final String COLUMN_KEY = "video_key";
+        public static final String COLUMN_NAME = "name";
+        public static final String COLUMN_SITE = "site";
+        public static final String COLUMN_TYPE = "type";
+
+        /**
+         * Builds the uri of the videos of a favorite movie
+         *
+         * @param movieId the id of the movie
+         * @return the uri
+         */
+        public static Uri buildVideosUri(long movieId) {
+            return FavoriteMovies.buildFavoriteUri(movieId).buildUpon()
+                    .appendPath(PATH_VIDEOS).build();
+        }
+    }
+
+    /**
+     * The reviews of the favorite movies, which are deleted with their movie
+     */
+    public static class FavoriteReviews implements BaseColumns {
+        // Table name
+        public static final String TABLE_NAME = "favorite_reviews";
+
+        // Name of columns
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_REVIEW_ID = "review_id";
+        public static final String COLUMN_AUTHOR = "author";
+        public static final String COLUMN_CONTENT = "content";
+        public static final String COLUMN_URL = "url";
+
+        /**
+         * Builds the uri of the reviews of a favorite movie
+         *
+         * @param movieId the id of the movie
+         * @return the uri
+         */
+        public static Uri buildReviewsUri(long movieId) {
+            return FavoriteMovies.buildFavoriteUri(movieId).buildUpon()
+                    .appendPath(PATH_REVIEWS).build();
+        }
     }
 }
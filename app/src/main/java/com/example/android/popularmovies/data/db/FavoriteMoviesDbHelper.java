@@ -27,16 +27,56 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies;
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteReviews;
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteVideos;
 
 /**
  * The DbHelper that we use to create and upgrade the database of favorite movies
+ * <p>
+ * The database uses write-ahead logging: the CursorLoader reading the favorites and the writes
+ * made from the detail screen run on separate connections, and readers never wait for a writer
+ * (or the other way round).
  */
 class FavoriteMoviesDbHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "favorite_movies.db";
-    private static final int DATABASE_VERSION = 1;
+    // The version of the schema: every new version needs a migration in FavoriteMoviesMigrations
+    static final int DATABASE_VERSION = 4;
+    // The full-text index of the favorites, kept up to date by triggers on the favorites table
+    static final String FTS_TABLE_NAME = "favorites_fts";
+    // Size of the page cache of the connection, enough to keep the whole database of a large
+    // collection of favorites in memory
+    private static final int CACHE_SIZE_KIB = 2048;
 
     FavoriteMoviesDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * The constructor, for a database with a different name (e.g. in tests)
+     *
+     * @param context      the context
+     * @param databaseName the name of the database file
+     */
+    FavoriteMoviesDbHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Needed to delete the videos and the reviews together with their movie
+        db.setForeignKeyConstraintsEnabled(true);
+
+        // These apply to the primary connection, which is the one that writes
+        if (db.isWriteAheadLoggingEnabled()) {
+            // With write-ahead logging the database can't be corrupted without a sync at every
+            // commit: at worst the last commits are lost on a power failure
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
+        db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+        // Sorts and temporary indexes don't need the disk
+        db.execSQL("PRAGMA temp_store = MEMORY");
     }
 
     @Override
@@ -52,16 +92,103 @@ class FavoriteMoviesDbHelper extends SQLiteOpenHelper {
                 FavoriteMovies.COLUMN_BACKDROP_PATH + " TEXT, " +
                 FavoriteMovies.COLUMN_OVERVIEW + " TEXT, " +
                 FavoriteMovies.COLUMN_VOTE_AVERAGE + " FLOAT, " +
-                FavoriteMovies.COLUMN_RELEASE_DATE + " TEXT" +
+                FavoriteMovies.COLUMN_RELEASE_DATE + " TEXT, " +
+                FavoriteMovies.COLUMN_DETAILS_SAVED_AT + " INTEGER" +
                 ");";
 
         db.execSQL(SQL_CREATE_FAVORITES_TABLE);
+        createDetailsTables(db);
+
+        // The indexes of the sort orders and of the filters of FavoriteMoviesQuery
+        db.execSQL("CREATE INDEX favorites_vote_average ON " + FavoriteMovies.TABLE_NAME +
+                " (" + FavoriteMovies.COLUMN_VOTE_AVERAGE + ")");
+        db.execSQL("CREATE INDEX favorites_release_date ON " + FavoriteMovies.TABLE_NAME +
+                " (" + FavoriteMovies.COLUMN_RELEASE_DATE + ")");
+        db.execSQL("CREATE INDEX favorites_title ON " + FavoriteMovies.TABLE_NAME +
+                " (" + FavoriteMovies.COLUMN_TITLE + " COLLATE NOCASE)");
+
+        createSearchIndex(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Destroys and recreates the table
-        db.execSQL("DROP TABLE IF EXISTS " + FavoriteMovies.TABLE_NAME);
-        onCreate(db);
+        // Migrate the schema step by step, keeping the favorites
+        FavoriteMoviesMigrations.migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Creates the full-text index of the titles, the original titles and the overviews of the
+     * favorite movies. It takes its content from the favorites table (so the texts are not stored
+     * twice), and the triggers keep it up to date with every change of the favorites.
+     *
+     * @param db the database
+     */
+    private static void createSearchIndex(SQLiteDatabase db) {
+        final String ftsColumns = FavoriteMovies.COLUMN_TITLE + ", " +
+                FavoriteMovies.COLUMN_ORIGINAL_TITLE + ", " + FavoriteMovies.COLUMN_OVERVIEW;
+        final String insertNewRow = "INSERT INTO " + FTS_TABLE_NAME + " (docid, " +
+                ftsColumns + ") VALUES (new." + FavoriteMovies._ID + ", new." +
+                FavoriteMovies.COLUMN_TITLE + ", new." + FavoriteMovies.COLUMN_ORIGINAL_TITLE +
+                ", new." + FavoriteMovies.COLUMN_OVERVIEW + ");";
+        final String deleteOldRow = "DELETE FROM " + FTS_TABLE_NAME + " WHERE docid = old." +
+                FavoriteMovies._ID + ";";
+
+        db.execSQL("CREATE VIRTUAL TABLE " + FTS_TABLE_NAME + " USING fts4(content=\"" +
+                FavoriteMovies.TABLE_NAME + "\", " + ftsColumns + ")");
+
+        // An external content index must drop the old text before it changes
+        db.execSQL("CREATE TRIGGER favorites_fts_before_update BEFORE UPDATE OF " +
+                ftsColumns + " ON " + FavoriteMovies.TABLE_NAME + " BEGIN " + deleteOldRow +
+                " END");
+        db.execSQL("CREATE TRIGGER favorites_fts_before_delete BEFORE DELETE ON " +
+                FavoriteMovies.TABLE_NAME + " BEGIN " + deleteOldRow + " END");
+        db.execSQL("CREATE TRIGGER favorites_fts_after_update AFTER UPDATE OF " +
+                ftsColumns + " ON " + FavoriteMovies.TABLE_NAME + " BEGIN " + insertNewRow +
+                " END");
+        db.execSQL("CREATE TRIGGER favorites_fts_after_insert AFTER INSERT ON " +
+                FavoriteMovies.TABLE_NAME + " BEGIN " + insertNewRow + " END");
+    }
+
+    /**
+     * Creates the tables of the videos and the reviews of the favorite movies
+     *
+     * @param db the database
+     */
+    private static void createDetailsTables(SQLiteDatabase db) {
+        final String SQL_CREATE_VIDEOS_TABLE = "CREATE TABLE " +
+                FavoriteVideos.TABLE_NAME + " (" +
+                FavoriteVideos._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                FavoriteVideos.COLUMN_MOVIE_ID + " INTEGER NOT NULL REFERENCES " +
+                FavoriteMovies.TABLE_NAME + "(" + FavoriteMovies._ID + ") ON DELETE CASCADE, " +
+                FavoriteVideos.COLUMN_POSITION + " INTEGER NOT NULL, " +
+                FavoriteVideos.COLUMN_VIDEO_ID + " TEXT, " +
+                FavoriteVideos.COLUMN_KEY + " TEXT, " +
+                FavoriteVideos.COLUMN_NAME + " TEXT, " +
+                FavoriteVideos.COLUMN_SITE + " TEXT, " +
+                FavoriteVideos.COLUMN_TYPE + " TEXT" +
+                ");";
+
+        final String SQL_CREATE_REVIEWS_TABLE = "CREATE TABLE " +
+                FavoriteReviews.TABLE_NAME + " (" +
+                FavoriteReviews._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                FavoriteReviews.COLUMN_MOVIE_ID + " INTEGER NOT NULL REFERENCES " +
+                FavoriteMovies.TABLE_NAME + "(" + FavoriteMovies._ID + ") ON DELETE CASCADE, " +
+                FavoriteReviews.COLUMN_POSITION + " INTEGER NOT NULL, " +
+                FavoriteReviews.COLUMN_REVIEW_ID + " TEXT, " +
+                FavoriteReviews.COLUMN_AUTHOR + " TEXT, " +
+                FavoriteReviews.COLUMN_CONTENT + " TEXT, " +
+                FavoriteReviews.COLUMN_URL + " TEXT" +
+                ");";
+
+        db.execSQL(SQL_CREATE_VIDEOS_TABLE);
+        db.execSQL(SQL_CREATE_REVIEWS_TABLE);
+
+        // The details of a movie are always read (and deleted) by movie
+        db.execSQL("CREATE INDEX favorite_videos_movie_id ON " + FavoriteVideos.TABLE_NAME +
+                " (" + FavoriteVideos.COLUMN_MOVIE_ID + ", " + FavoriteVideos.COLUMN_POSITION +
+                ")");
+        db.execSQL("CREATE INDEX favorite_reviews_movie_id ON " + FavoriteReviews.TABLE_NAME +
+                " (" + FavoriteReviews.COLUMN_MOVIE_ID + ", " + FavoriteReviews.COLUMN_POSITION +
+                ")");
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * The migrations of the database of favorite movies, each from a version of the schema to the
+ * next one. They change the schema in place (new columns, tables and indexes, data copied into
+ * rebuilt tables), so that the favorites of the users are never lost on an upgrade.
+ * <p>
+ * A migration describes the schema of its own versions, so it uses plain SQL and not the contract,
+ * which describes the latest schema only. Every new version of the schema needs a migration here,
+ * a fixture database of the previous version and a run of FavoriteMoviesMigrationTest.
+ * <p>
+ * Foreign keys are enforced while migrating: a table with children must not be dropped to be
+ * rebuilt, or its children would be deleted with it.
+ */
+final class FavoriteMoviesMigrations {
+    private static final Migration[] MIGRATIONS = {
+            // Adds the videos and the reviews of the favorite movies
+            new Migration(1, 2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE favorites ADD COLUMN details_saved_at INTEGER");
+                    db.execSQL("CREATE TABLE favorite_videos (" +
+                            "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "movie_id INTEGER NOT NULL REFERENCES favorites(_id) " +
+                            "ON DELETE CASCADE, " +
+                            "position INTEGER NOT NULL, " +
+                            "video_id TEXT, " +
+                            "video_key TEXT, " +
+                            "name TEXT, " +
+                            "site TEXT, " +
+                            "type TEXT)");
+                    db.execSQL("CREATE TABLE favorite_reviews (" +
+                            "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "movie_id INTEGER NOT NULL REFERENCES favorites(_id) " +
+                            "ON DELETE CASCADE, " +
+                            "position INTEGER NOT NULL, " +
+                            "review_id TEXT, " +
+                            "author TEXT, " +
+                            "content TEXT, " +
+                            "url TEXT)");
+                    db.execSQL("CREATE INDEX favorite_videos_movie_id " +
+                            "ON favorite_videos (movie_id, position)");
+                    db.execSQL("CREATE INDEX favorite_reviews_movie_id " +
+                            "ON favorite_reviews (movie_id, position)");
+                }
+            },
+            // Adds the indexes to sort and filter the favorites
+            new Migration(2, 3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE INDEX favorites_vote_average ON favorites (vote_average)");
+                    db.execSQL("CREATE INDEX favorites_release_date ON favorites (release_date)");
+                    db.execSQL("CREATE INDEX favorites_title ON favorites (title COLLATE NOCASE)");
+                }
+            },
+            // Adds the full-text index of the favorites, and fills it with the existing ones
+            new Migration(3, 4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE VIRTUAL TABLE favorites_fts USING fts4(" +
+                            "content=\"favorites\", title, original_title, overview)");
+                    db.execSQL("CREATE TRIGGER favorites_fts_before_update " +
+                            "BEFORE UPDATE OF title, original_title, overview ON favorites " +
+                            "BEGIN DELETE FROM favorites_fts WHERE docid = old._id; END");
+                    db.execSQL("CREATE TRIGGER favorites_fts_before_delete " +
+                            "BEFORE DELETE ON favorites " +
+                            "BEGIN DELETE FROM favorites_fts WHERE docid = old._id; END");
+                    db.execSQL("CREATE TRIGGER favorites_fts_after_update " +
+                            "AFTER UPDATE OF title, original_title, overview ON favorites " +
+                            "BEGIN INSERT INTO favorites_fts (docid, title, original_title, " +
+                            "overview) VALUES (new._id, new.title, new.original_title, " +
+                            "new.overview); END");
+                    db.execSQL("CREATE TRIGGER favorites_fts_after_insert " +
+                            "AFTER INSERT ON favorites " +
+                            "BEGIN INSERT INTO favorites_fts (docid, title, original_title, " +
+                            "overview) VALUES (new._id, new.title, new.original_title, " +
+                            "new.overview); END");
+                    db.execSQL("INSERT INTO favorites_fts (docid, title, original_title, " +
+                            "overview) SELECT _id, title, original_title, overview FROM favorites");
+                }
+            }
+    };
+
+    // Private constructor, which we use to avoid instantiating this class
+    private FavoriteMoviesMigrations() {
+    }
+
+    /**
+     * Migrates a database to a newer version, one migration after the other. It runs in the
+     * transaction of the upgrade, so either the database is migrated entirely or it is not
+     * changed at all.
+     *
+     * @param db         the database
+     * @param oldVersion the version of the database
+     * @param newVersion the version to migrate the database to
+     * @throws IllegalStateException if a migration is missing
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        int version = oldVersion;
+        while (version < newVersion) {
+            Migration migration = findMigration(version);
+            if ((migration == null) || (migration.endVersion > newVersion)) {
+                throw new IllegalStateException("No migration of the favorites database from " +
+                        "version " + version + " to version " + newVersion);
+            }
+            migration.migrate(db);
+            version = migration.endVersion;
+        }
+    }
+
+    /**
+     * Finds the migration from a version
+     *
+     * @param startVersion the version to migrate from
+     * @return the migration, or null if there is none
+     */
+    private static Migration findMigration(int startVersion) {
+        for (Migration migration : MIGRATIONS) {
+            if (migration.startVersion == startVersion) {
+                return migration;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A migration of the schema from a version to a newer one
+     */
+    abstract static class Migration {
+        final int startVersion;
+        final int endVersion;
+
+        Migration(int startVersion, int endVersion) {
+            this.startVersion = startVersion;
+            this.endVersion = endVersion;
+        }
+
+        /**
+         * Migrates the schema (and the data, if needed)
+         *
+         * @param db the database, at the start version
+         */
+        abstract void migrate(SQLiteDatabase db);
+    }
+}
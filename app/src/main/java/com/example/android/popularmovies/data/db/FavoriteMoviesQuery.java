@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.example.android.popularmovies.data.db.FavoriteMoviesContract.FavoriteMovies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A query of the favorite movies, built from a uri of their directory: the sort order (or the
+ * text to be searched) comes from the path (e.g. PATH_BY_RATING) and the filters from the query
+ * parameters (e.g. PARAM_MIN_YEAR). Every sort order and every filter is backed by an index of
+ * the favorites table, so neither needs a full scan or a sort in a temporary table, and the
+ * searches go through the full-text index.
+ */
+final class FavoriteMoviesQuery {
+    // The ties are broken by id, which is in every index: the order stays the one of the index
+    static final String ORDER_BY_RATING =
+            FavoriteMovies.COLUMN_VOTE_AVERAGE + " DESC, " + FavoriteMovies._ID + " DESC";
+    static final String ORDER_BY_RELEASE_DATE =
+            FavoriteMovies.COLUMN_RELEASE_DATE + " DESC, " + FavoriteMovies._ID + " DESC";
+    static final String ORDER_BY_TITLE =
+            FavoriteMovies.COLUMN_TITLE + " COLLATE NOCASE, " + FavoriteMovies._ID;
+    private static final String SEARCH_SELECTION = FavoriteMovies._ID + " IN (SELECT docid FROM " +
+            FavoriteMoviesDbHelper.FTS_TABLE_NAME + " WHERE " +
+            FavoriteMoviesDbHelper.FTS_TABLE_NAME + " MATCH ?)";
+    private final String selection;
+    private final String[] selectionArgs;
+    private final String sortOrder;
+
+    private FavoriteMoviesQuery(String selection, String[] selectionArgs, String sortOrder) {
+        this.selection = selection;
+        this.selectionArgs = selectionArgs;
+        this.sortOrder = sortOrder;
+    }
+
+    /**
+     * Builds the query for a uri of the directory of favorites
+     *
+     * @param uri           the uri, the directory itself or one of its sorted or search uris
+     * @param selection     the selection of the caller, added to the filters
+     * @param selectionArgs the arguments of the selection of the caller
+     * @param sortOrder     the sort order of the caller, used only if the uri has none
+     * @return the query
+     * @throws IllegalArgumentException if a filter is not a number
+     */
+    static FavoriteMoviesQuery fromUri(Uri uri, String selection, String[] selectionArgs,
+                                       String sortOrder) {
+        List<String> clauses = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+
+        if (!TextUtils.isEmpty(selection)) {
+            clauses.add("(" + selection + ")");
+            if (selectionArgs != null) {
+                args.addAll(Arrays.asList(selectionArgs));
+            }
+        }
+
+        List<String> pathSegments = uri.getPathSegments();
+        String path = (pathSegments.size() > 1) ? pathSegments.get(1) : null;
+
+        if (FavoriteMoviesContract.PATH_SEARCH.equals(path)) {
+            String matchQuery = buildMatchQuery(
+                    (pathSegments.size() > 2) ? pathSegments.get(2) : null);
+            if (matchQuery != null) {
+                clauses.add(SEARCH_SELECTION);
+                args.add(matchQuery);
+            } else {
+                // Nothing to be searched, nothing found
+                clauses.add("0");
+            }
+        }
+
+        // The release date of a favorite is its year
+        String minYear = getYearParameter(uri, FavoriteMoviesContract.PARAM_MIN_YEAR);
+        if (minYear != null) {
+            clauses.add(FavoriteMovies.COLUMN_RELEASE_DATE + " >= ?");
+            args.add(minYear);
+        }
+        String maxYear = getYearParameter(uri, FavoriteMoviesContract.PARAM_MAX_YEAR);
+        if (maxYear != null) {
+            clauses.add(FavoriteMovies.COLUMN_RELEASE_DATE + " <= ?");
+            args.add(maxYear);
+        }
+        String minRating = getNumberParameter(uri, FavoriteMoviesContract.PARAM_MIN_RATING);
+        if (minRating != null) {
+            clauses.add(FavoriteMovies.COLUMN_VOTE_AVERAGE + " >= ?");
+            args.add(minRating);
+        }
+
+        String order;
+        if (FavoriteMoviesContract.PATH_BY_RATING.equals(path)) {
+            order = ORDER_BY_RATING;
+        } else if (FavoriteMoviesContract.PATH_BY_RELEASE_DATE.equals(path)) {
+            order = ORDER_BY_RELEASE_DATE;
+        } else if (FavoriteMoviesContract.PATH_BY_TITLE.equals(path)) {
+            order = ORDER_BY_TITLE;
+        } else {
+            order = sortOrder;
+        }
+
+        return new FavoriteMoviesQuery(
+                clauses.isEmpty() ? null : TextUtils.join(" AND ", clauses),
+                args.isEmpty() ? null : args.toArray(new String[args.size()]),
+                order);
+    }
+
+    /**
+     * Runs the query
+     *
+     * @param db         the database
+     * @param projection the columns to be returned
+     * @return the cursor
+     */
+    Cursor query(SQLiteDatabase db, String[] projection) {
+        return db.query(FavoriteMovies.TABLE_NAME, projection, selection, selectionArgs, null,
+                null, sortOrder);
+    }
+
+    /**
+     * Gets the SQL of the query (e.g. to check its plan), whose arguments are getSelectionArgs()
+     *
+     * @param projection the columns to be returned
+     * @return the SQL
+     */
+    String toSql(String[] projection) {
+        return SQLiteQueryBuilder.buildQueryString(false, FavoriteMovies.TABLE_NAME, projection,
+                selection, null, null, sortOrder, null);
+    }
+
+    String[] getSelectionArgs() {
+        return selectionArgs;
+    }
+
+    /**
+     * Builds the full-text query of a text: every word of the text must be in the favorite, or the
+     * start of one of its words (e.g. "spir aw" finds "Spirited Away")
+     *
+     * @param searchText the text to be searched
+     * @return the full-text query, or null if the text has no words
+     */
+    static String buildMatchQuery(String searchText) {
+        if (searchText == null) {
+            return null;
+        }
+
+        StringBuilder matchQuery = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= searchText.length(); i++) {
+            char c = (i < searchText.length()) ? searchText.charAt(i) : ' ';
+            // The words are split as the index does: on the ASCII characters which are neither
+            // letters nor digits
+            if ((c < 128) && !Character.isLetterOrDigit(c)) {
+                if (word.length() > 0) {
+                    // Quoted, so that no word is taken for an operator (e.g. OR)
+                    if (matchQuery.length() > 0) {
+                        matchQuery.append(' ');
+                    }
+                    matchQuery.append('"').append(word).append("*\"");
+                    word.setLength(0);
+                }
+            } else {
+                word.append(c);
+            }
+        }
+
+        return (matchQuery.length() > 0) ? matchQuery.toString() : null;
+    }
+
+    /**
+     * Gets a query parameter which must be a year, with four digits so that it compares with the
+     * release dates as text
+     *
+     * @param uri  the uri
+     * @param name the name of the parameter
+     * @return the year, or null if it is missing
+     * @throws IllegalArgumentException if the parameter is not a year
+     */
+    private static String getYearParameter(Uri uri, String name) {
+        String value = uri.getQueryParameter(name);
+        if (TextUtils.isEmpty(value)) {
+            return null;
+        }
+        try {
+            return String.format(Locale.US, "%04d", Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " in uri: " + uri);
+        }
+    }
+
+    /**
+     * Gets a query parameter which must be a number
+     *
+     * @param uri  the uri
+     * @param name the name of the parameter
+     * @return the parameter, or null if it is missing
+     * @throws IllegalArgumentException if the parameter is not a number
+     */
+    private static String getNumberParameter(Uri uri, String name) {
+        String value = uri.getQueryParameter(name);
+        if (TextUtils.isEmpty(value)) {
+            return null;
+        }
+        try {
+            Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " in uri: " + uri);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.provider.BaseColumns;
+
+/**
+ * The contract for the database of the pages of movies browsed by the user (popular, top rated
+ * and search results), which are kept so that browsing works offline
+ */
+public class MoviesCacheContract {
+
+    // Private constructor, so that this class cannot be instantiated
+    private MoviesCacheContract() {
+    }
+
+    /**
+     * The movies of the cached pages, each one stored once. The _ID is the id of the movie.
+     */
+    public static class CachedMovies implements BaseColumns {
+        // Table name
+        public static final String TABLE_NAME = "cached_movies";
+
+        // Name of columns
+        public static final String COLUMN_ORIGINAL_TITLE = "original_title";
+        public static final String COLUMN_TITLE = "title";
+        public static final String COLUMN_POSTER_PATH = "poster_path";
+        public static final String COLUMN_BACKDROP_PATH = "backdrop_path";
+        public static final String COLUMN_OVERVIEW = "overview";
+        public static final String COLUMN_VOTE_AVERAGE = "vote_average";
+        public static final String COLUMN_RELEASE_DATE = "release_date";
+    }
+
+    /**
+     * The cached pages, with the time they have been fetched
+     */
+    public static class CachedPages implements BaseColumns {
+        // Table name
+        public static final String TABLE_NAME = "cached_pages";
+
+        // Name of columns
+        public static final String COLUMN_QUERY_KEY = "query_key";
+        public static final String COLUMN_PAGE = "page";
+        public static final String COLUMN_TOTAL_PAGES = "total_pages";
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+    }
+
+    /**
+     * Which movies are in which page, and in which order
+     */
+    public static class PageMovies {
+        // Table name
+        public static final String TABLE_NAME = "page_movies";
+
+        // Name of columns
+        public static final String COLUMN_PAGE_ID = "page_id";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.popularmovies.data.db.MoviesCacheContract.CachedMovies;
+import com.example.android.popularmovies.data.db.MoviesCacheContract.CachedPages;
+import com.example.android.popularmovies.data.db.MoviesCacheContract.PageMovies;
+
+/**
+ * The DbHelper that we use to create and upgrade the database of cached pages of movies.
+ * It is a separate database from the one of the favorite movies: being a cache, it can be
+ * dropped and recreated on upgrade without losing anything the user saved.
+ */
+class MoviesCacheDbHelper extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "movies_cache.db";
+    private static final int DATABASE_VERSION = 1;
+
+    MoviesCacheDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Deleting a page deletes its memberships
+        db.setForeignKeyConstraintsEnabled(true);
+        // Let evicted pages give their space back to the file system. This only has effect
+        // when the database is created
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+
+        // String queries that will create the database
+        final String SQL_CREATE_MOVIES_TABLE = "CREATE TABLE " +
+                CachedMovies.TABLE_NAME + " (" +
+                CachedMovies._ID + " INTEGER PRIMARY KEY, " +
+                CachedMovies.COLUMN_ORIGINAL_TITLE + " TEXT, " +
+                CachedMovies.COLUMN_TITLE + " TEXT, " +
+                CachedMovies.COLUMN_POSTER_PATH + " TEXT, " +
+                CachedMovies.COLUMN_BACKDROP_PATH + " TEXT, " +
+                CachedMovies.COLUMN_OVERVIEW + " TEXT, " +
+                CachedMovies.COLUMN_VOTE_AVERAGE + " FLOAT, " +
+                CachedMovies.COLUMN_RELEASE_DATE + " TEXT" +
+                ");";
+
+        final String SQL_CREATE_PAGES_TABLE = "CREATE TABLE " +
+                CachedPages.TABLE_NAME + " (" +
+                CachedPages._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                CachedPages.COLUMN_QUERY_KEY + " TEXT NOT NULL, " +
+                CachedPages.COLUMN_PAGE + " INTEGER NOT NULL, " +
+                CachedPages.COLUMN_TOTAL_PAGES + " INTEGER NOT NULL, " +
+                CachedPages.COLUMN_FETCHED_AT + " INTEGER NOT NULL, " +
+                "UNIQUE (" + CachedPages.COLUMN_QUERY_KEY + ", " + CachedPages.COLUMN_PAGE + ")" +
+                ");";
+
+        final String SQL_CREATE_PAGE_MOVIES_TABLE = "CREATE TABLE " +
+                PageMovies.TABLE_NAME + " (" +
+                PageMovies.COLUMN_PAGE_ID + " INTEGER NOT NULL REFERENCES " +
+                CachedPages.TABLE_NAME + "(" + CachedPages._ID + ") ON DELETE CASCADE, " +
+                PageMovies.COLUMN_POSITION + " INTEGER NOT NULL, " +
+                PageMovies.COLUMN_MOVIE_ID + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + PageMovies.COLUMN_PAGE_ID + ", " + PageMovies.COLUMN_POSITION +
+                ")" +
+                ");";
+
+        // The oldest pages are evicted first, and movies no longer in any page are deleted
+        final String SQL_CREATE_PAGES_FETCHED_AT_INDEX = "CREATE INDEX " +
+                CachedPages.TABLE_NAME + "_" + CachedPages.COLUMN_FETCHED_AT + "_idx ON " +
+                CachedPages.TABLE_NAME + " (" + CachedPages.COLUMN_FETCHED_AT + ");";
+        final String SQL_CREATE_PAGE_MOVIES_MOVIE_ID_INDEX = "CREATE INDEX " +
+                PageMovies.TABLE_NAME + "_" + PageMovies.COLUMN_MOVIE_ID + "_idx ON " +
+                PageMovies.TABLE_NAME + " (" + PageMovies.COLUMN_MOVIE_ID + ");";
+
+        db.execSQL(SQL_CREATE_MOVIES_TABLE);
+        db.execSQL(SQL_CREATE_PAGES_TABLE);
+        db.execSQL(SQL_CREATE_PAGE_MOVIES_TABLE);
+        db.execSQL(SQL_CREATE_PAGES_FETCHED_AT_INDEX);
+        db.execSQL(SQL_CREATE_PAGE_MOVIES_MOVIE_ID_INDEX);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // It is only a cache: destroys and recreates the tables
+        db.execSQL("DROP TABLE IF EXISTS " + PageMovies.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + CachedPages.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + CachedMovies.TABLE_NAME);
+        onCreate(db);
+    }
+}
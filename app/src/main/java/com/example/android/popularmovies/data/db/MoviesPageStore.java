@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.popularmovies.data.db.MoviesCacheContract.CachedMovies;
+import com.example.android.popularmovies.data.db.MoviesCacheContract.CachedPages;
+import com.example.android.popularmovies.data.db.MoviesCacheContract.PageMovies;
+import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the pages of movies browsed by the user in SQLite, so that they can be shown offline and
+ * on a cold start. Every movie is stored once, however many pages it belongs to.
+ * <p>
+ * The database has a size budget: when it is exceeded, the pages fetched least recently are
+ * evicted (with the movies which are not in any other page) and their space is given back to the
+ * file system.
+ * <p>
+ * All the methods access the database, so they must not be called on the main thread.
+ */
+public class MoviesPageStore {
+    private static final long DEFAULT_MAX_SIZE_BYTES = 2 * 1024 * 1024;
+    // Pages evicted at a time, before the size is checked again
+    private static final int EVICTION_BATCH_PAGES = 5;
+    private static final String SQL_SELECT_PAGE_MOVIES = "SELECT m.* FROM " +
+            PageMovies.TABLE_NAME + " pm JOIN " + CachedMovies.TABLE_NAME + " m ON m." +
+            CachedMovies._ID + " = pm." + PageMovies.COLUMN_MOVIE_ID +
+            " WHERE pm." + PageMovies.COLUMN_PAGE_ID + " = ?" +
+            " ORDER BY pm." + PageMovies.COLUMN_POSITION;
+    private static final String SQL_DELETE_ORPHAN_MOVIES = "DELETE FROM " +
+            CachedMovies.TABLE_NAME + " WHERE " + CachedMovies._ID + " NOT IN (SELECT " +
+            PageMovies.COLUMN_MOVIE_ID + " FROM " + PageMovies.TABLE_NAME + ")";
+    private static MoviesPageStore instance;
+    private final MoviesCacheDbHelper dbHelper;
+    private final long maxSizeBytes;
+
+    private MoviesPageStore(Context context, long maxSizeBytes) {
+        dbHelper = new MoviesCacheDbHelper(context);
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Gets the single instance of the MoviesPageStore
+     *
+     * @param context the context
+     * @return the MoviesPageStore
+     */
+    public static synchronized MoviesPageStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new MoviesPageStore(context.getApplicationContext(),
+                    DEFAULT_MAX_SIZE_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets a stored page
+     *
+     * @param queryKey the key of the query (category, search query and language)
+     * @param page     the page number
+     * @return the page, or null if it is not stored
+     */
+    public StoredPage getPage(String queryKey, int page) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        long pageId;
+        int totalPages;
+        long fetchedAt;
+        Cursor pageCursor = db.query(CachedPages.TABLE_NAME,
+                new String[]{CachedPages._ID, CachedPages.COLUMN_TOTAL_PAGES,
+                        CachedPages.COLUMN_FETCHED_AT},
+                CachedPages.COLUMN_QUERY_KEY + "=? AND " + CachedPages.COLUMN_PAGE + "=?",
+                new String[]{queryKey, String.valueOf(page)},
+                null,
+                null,
+                null);
+        try {
+            if (!pageCursor.moveToFirst()) {
+                return null;
+            }
+            pageId = pageCursor.getLong(0);
+            totalPages = pageCursor.getInt(1);
+            fetchedAt = pageCursor.getLong(2);
+        } finally {
+            pageCursor.close();
+        }
+
+        List<Movie> movies = new ArrayList<>();
+        Cursor moviesCursor = db.rawQuery(SQL_SELECT_PAGE_MOVIES,
+                new String[]{String.valueOf(pageId)});
+        try {
+            int idIndex = moviesCursor.getColumnIndex(CachedMovies._ID);
+            int originalTitleIndex = moviesCursor.getColumnIndex(CachedMovies.COLUMN_ORIGINAL_TITLE);
+            int titleIndex = moviesCursor.getColumnIndex(CachedMovies.COLUMN_TITLE);
+            int posterIndex = moviesCursor.getColumnIndex(CachedMovies.COLUMN_POSTER_PATH);
+            int backdropIndex = moviesCursor.getColumnIndex(CachedMovies.COLUMN_BACKDROP_PATH);
+            int overviewIndex = moviesCursor.getColumnIndex(CachedMovies.COLUMN_OVERVIEW);
+            int voteAverageIndex = moviesCursor.getColumnIndex(CachedMovies.COLUMN_VOTE_AVERAGE);
+            int releaseDateIndex = moviesCursor.getColumnIndex(CachedMovies.COLUMN_RELEASE_DATE);
+            while (moviesCursor.moveToNext()) {
+                movies.add(new Movie(moviesCursor.getInt(idIndex),
+                        moviesCursor.getString(originalTitleIndex),
+                        moviesCursor.getString(titleIndex),
+                        moviesCursor.getString(posterIndex),
+                        moviesCursor.getString(backdropIndex),
+                        moviesCursor.getString(overviewIndex),
+                        (double) moviesCursor.getFloat(voteAverageIndex),
+                        moviesCursor.getString(releaseDateIndex)));
+            }
+        } finally {
+            moviesCursor.close();
+        }
+
+        return new StoredPage(new MovieResponse(page, totalPages, movies), fetchedAt);
+    }
+
+    /**
+     * Stores a page, replacing the stored one if any, then evicts the oldest pages if the
+     * database has grown over its budget
+     *
+     * @param queryKey   the key of the query (category, search query and language)
+     * @param moviesPage the page
+     */
+    public void putPage(String queryKey, MovieResponse moviesPage) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        db.beginTransaction();
+        try {
+            // Replacing the page deletes its old memberships
+            db.delete(CachedPages.TABLE_NAME,
+                    CachedPages.COLUMN_QUERY_KEY + "=? AND " + CachedPages.COLUMN_PAGE + "=?",
+                    new String[]{queryKey, String.valueOf(moviesPage.getPage())});
+
+            ContentValues pageValues = new ContentValues();
+            pageValues.put(CachedPages.COLUMN_QUERY_KEY, queryKey);
+            pageValues.put(CachedPages.COLUMN_PAGE, moviesPage.getPage());
+            pageValues.put(CachedPages.COLUMN_TOTAL_PAGES, moviesPage.getTotalPages());
+            pageValues.put(CachedPages.COLUMN_FETCHED_AT, System.currentTimeMillis());
+            long pageId = db.insertOrThrow(CachedPages.TABLE_NAME, null, pageValues);
+
+            ContentValues movieValues = new ContentValues();
+            ContentValues membershipValues = new ContentValues();
+            int position = 0;
+            for (Movie movie : moviesPage.getMovies()) {
+                movieValues.clear();
+                movieValues.put(CachedMovies._ID, movie.getMovieId());
+                movieValues.put(CachedMovies.COLUMN_ORIGINAL_TITLE, movie.getOriginalTitle());
+                movieValues.put(CachedMovies.COLUMN_TITLE, movie.getTitle());
+                movieValues.put(CachedMovies.COLUMN_POSTER_PATH, movie.getPosterImageUrl());
+                movieValues.put(CachedMovies.COLUMN_BACKDROP_PATH, movie.getBackdropImageUrl());
+                movieValues.put(CachedMovies.COLUMN_OVERVIEW, movie.getOverview());
+                movieValues.put(CachedMovies.COLUMN_VOTE_AVERAGE, movie.getUserRating());
+                movieValues.put(CachedMovies.COLUMN_RELEASE_DATE, movie.getReleaseDate());
+                db.insertWithOnConflict(CachedMovies.TABLE_NAME, null, movieValues,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+
+                membershipValues.clear();
+                membershipValues.put(PageMovies.COLUMN_PAGE_ID, pageId);
+                membershipValues.put(PageMovies.COLUMN_POSITION, position++);
+                membershipValues.put(PageMovies.COLUMN_MOVIE_ID, movie.getMovieId());
+                db.insertOrThrow(PageMovies.TABLE_NAME, null, membershipValues);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        trimToSize(db);
+    }
+
+    /**
+     * Removes all the stored pages
+     */
+    public void clear() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        db.beginTransaction();
+        try {
+            db.delete(CachedPages.TABLE_NAME, null, null);
+            db.delete(CachedMovies.TABLE_NAME, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        releaseFreePages(db);
+    }
+
+    /**
+     * Gets the space taken by the data in the database (free pages excluded)
+     *
+     * @return the size in bytes
+     */
+    public long getSizeBytes() {
+        return getUsedBytes(dbHelper.getReadableDatabase());
+    }
+
+    /**
+     * Evicts the pages fetched least recently, until the database is within its budget
+     *
+     * @param db the database
+     */
+    private void trimToSize(SQLiteDatabase db) {
+        if (getUsedBytes(db) <= maxSizeBytes) {
+            return;
+        }
+
+        do {
+            db.beginTransaction();
+            try {
+                int evictedPages = db.delete(CachedPages.TABLE_NAME,
+                        CachedPages._ID + " IN (SELECT " + CachedPages._ID + " FROM " +
+                                CachedPages.TABLE_NAME + " ORDER BY " +
+                                CachedPages.COLUMN_FETCHED_AT + " LIMIT " +
+                                EVICTION_BATCH_PAGES + ")",
+                        null);
+                db.execSQL(SQL_DELETE_ORPHAN_MOVIES);
+                db.setTransactionSuccessful();
+                if (evictedPages == 0) {
+                    break;
+                }
+            } finally {
+                db.endTransaction();
+            }
+        } while (getUsedBytes(db) > maxSizeBytes);
+
+        releaseFreePages(db);
+    }
+
+    /**
+     * Gets the space taken by the data in a database, from the number of its pages which are not
+     * free
+     *
+     * @param db the database
+     * @return the size in bytes
+     */
+    private static long getUsedBytes(SQLiteDatabase db) {
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long freePageCount = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        return (pageCount - freePageCount) * db.getPageSize();
+    }
+
+    /**
+     * Gives the free pages of the database back to the file system
+     *
+     * @param db the database
+     */
+    private static void releaseFreePages(SQLiteDatabase db) {
+        // The vacuum runs while the rows of the cursor are read
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+        try {
+            cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * A stored page, with the time it has been fetched
+     */
+    public static class StoredPage {
+        private final MovieResponse moviesPage;
+        private final long fetchedAtMillis;
+
+        StoredPage(MovieResponse moviesPage, long fetchedAtMillis) {
+            this.moviesPage = moviesPage;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+
+        public MovieResponse getMoviesPage() {
+            return moviesPage;
+        }
+
+        public long getFetchedAtMillis() {
+            return fetchedAtMillis;
+        }
+    }
+}
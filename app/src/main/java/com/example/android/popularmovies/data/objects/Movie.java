@@ -116,6 +116,24 @@ public class Movie implements Parcelable {
         }
     }
 
+    /**
+     * Copy constructor. The videos and reviews are shared with the original movie.
+     *
+     * @param movie the movie to be copied
+     */
+    public Movie(Movie movie) {
+        this.movieId = movie.movieId;
+        this.originalTitle = movie.originalTitle;
+        this.title = movie.title;
+        this.posterImageUrl = movie.posterImageUrl;
+        this.backdropImageUrl = movie.backdropImageUrl;
+        this.overview = movie.overview;
+        this.userRating = movie.userRating;
+        this.releaseDate = movie.releaseDate;
+        this.videos = movie.videos;
+        this.reviews = movie.reviews;
+    }
+
     /**
      * Constructor to read from a Parcelable
      *
@@ -263,6 +281,15 @@ public class Movie implements Parcelable {
         }
     }
 
+    /**
+     * Checks if the videos have been loaded (even if there are none)
+     *
+     * @return true if the videos have been loaded
+     */
+    public boolean isVideosLoaded() {
+        return videos != null;
+    }
+
     /**
      * Setter method for the videos
      *
@@ -285,6 +312,15 @@ public class Movie implements Parcelable {
         }
     }
 
+    /**
+     * Checks if the reviews have been loaded (even if there are none)
+     *
+     * @return true if the reviews have been loaded
+     */
+    public boolean isReviewsLoaded() {
+        return reviews != null;
+    }
+
     /**
      * Setter method for the reviews
      *
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.data.objects;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * This class is used in JsonUtils to parse the Json string returned from the details endpoint of
+ * the TheMovieDB API, when the videos are appended to the response
+ */
+public class MovieDetailResponse {
+    @SerializedName("id")
+    private final int movieId;
+    @SerializedName("videos")
+    private final VideoResponse videos;
+
+    public MovieDetailResponse(int movieId,
+                               VideoResponse videos) {
+        this.movieId = movieId;
+        this.videos = videos;
+    }
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public VideoResponse getVideos() {
+        return videos;
+    }
+}
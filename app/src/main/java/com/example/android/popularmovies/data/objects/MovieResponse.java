@@ -27,20 +27,30 @@ import com.google.gson.annotations.SerializedName;
 import java.util.List;
 
 /**
- * This class is used in JsonUtils to parse the Json string returned from the TheMovieDB API
+ * This class is used in JsonUtils to parse the Json string returned from the TheMovieDB API.
+ * Besides the movies, it carries the paging state of the query it belongs to (the page number and
+ * the total number of pages), so that every query keeps its own state.
  */
 public class MovieResponse {
+    @SerializedName("page")
+    private final int page;
     @SerializedName("total_pages")
     private final int totalPages;
     @SerializedName("results")
     private final List<Movie> movies;
 
-    public MovieResponse(int totalPages,
+    public MovieResponse(int page,
+                         int totalPages,
                          List<Movie> movies) {
+        this.page = page;
         this.totalPages = totalPages;
         this.movies = movies;
     }
 
+    public int getPage() {
+        return page;
+    }
+
     public int getTotalPages() {
         return totalPages;
     }
@@ -24,47 +24,40 @@ package com.example.android.popularmovies.data.objects;
 
 /**
  * POJO Class that represents the position (actual page) in a set of pages.
+ * Every query (a movies list or a search) has its own instance, so that different queries can be
+ * paged, and loaded, independently of each other.
  */
 public class Page {
-    private static int page = 1;
-    private static int totalPages;
-    private static int searchPage = 1;
-    private static int searchTotalPages;
+    private int page;
+    private int totalPages;
 
     /**
-     * Gets the actual page
-     *
-     * @return the actual page
-     */
-    public static int getPage() {
-        return page;
-    }
-
-    /**
-     * Sets the actual page
+     * The constructor
      *
-     * @param page the actual page
+     * @param page       the actual page
+     * @param totalPages the total number of pages available, 0 if not known yet
      */
-    public static void setPage(int page) {
-        Page.page = page;
+    public Page(int page, int totalPages) {
+        this.page = page;
+        this.totalPages = totalPages;
     }
 
     /**
-     * Gets the actual search page
+     * Gets the actual page
      *
-     * @return the actual search page
+     * @return the actual page
      */
-    public static int getSearchPage() {
-        return searchPage;
+    public int getPage() {
+        return page;
     }
 
     /**
-     * Sets the actual search page
+     * Sets the actual page
      *
-     * @param searchPage the actual searchPage
+     * @param page the actual page
      */
-    public static void setSearchPage(int searchPage) {
-        Page.searchPage = searchPage;
+    public void setPage(int page) {
+        this.page = page;
     }
 
     /**
@@ -72,34 +65,26 @@ public class Page {
      *
      * @return the total number of pages available
      */
-    public static int getTotalPages() {
+    public int getTotalPages() {
         return totalPages;
     }
 
     /**
      * Sets the total number of pages available
      *
-     * @param pages the total number of pages available
-     */
-    public static void setTotalPages(int pages) {
-        Page.totalPages = pages;
-    }
-
-    /**
-     * Get the total number of search pages available
-     *
-     * @return the total number of search pages available
+     * @param totalPages the total number of pages available
      */
-    public static int getSearchTotalPages() {
-        return searchTotalPages;
+    public void setTotalPages(int totalPages) {
+        this.totalPages = totalPages;
     }
 
     /**
-     * Sets the total number of search pages available
+     * Checks if a page number is in the range of the available pages
      *
-     * @param searchTotalPages the total number of search pages available
+     * @param pageNumber the page number
+     * @return true if the page exists
      */
-    public static void setSearchTotalPages(int searchTotalPages) {
-        Page.searchTotalPages = searchTotalPages;
+    public boolean isValidPage(int pageNumber) {
+        return (pageNumber >= 1) && (pageNumber <= totalPages);
     }
 }
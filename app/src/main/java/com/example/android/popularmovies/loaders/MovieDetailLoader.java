@@ -23,28 +23,72 @@
 package com.example.android.popularmovies.loaders;
 
 import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 
+import com.example.android.popularmovies.data.db.FavoriteDetailsStore;
 import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieDetailResponse;
 import com.example.android.popularmovies.data.objects.ReviewResponse;
 import com.example.android.popularmovies.data.objects.VideoResponse;
+import com.example.android.popularmovies.network.CachePolicy;
+import com.example.android.popularmovies.network.FanOutFetcher;
+import com.example.android.popularmovies.network.RequestPriority;
 import com.example.android.popularmovies.utils.JsonUtils;
 import com.example.android.popularmovies.utils.NetworkUtils;
 
-import java.net.URL;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A subclass of AsyncTaskLoader which is responsible for communicating with the API on a
- * background thread and retrieve information about a single movie
+ * background thread and retrieve information about a single movie.
+ * <p>
+ * The videos come with the details of the movie, in a single request, while the reviews (the
+ * slowest to load) are fetched concurrently. As soon as one of the two is
+ * available, a partial result is delivered, so the activity can show it without waiting for the
+ * other.
+ * <p>
+ * The videos and the reviews of the favorite movies are stored in the database, and read from
+ * there (with no network requests at all) unless they must be revalidated.
  */
 public class MovieDetailLoader extends AsyncTaskLoader<Movie> {
+    // Maximum number of sub-resources fetched at the same time, shared by all detail loaders
+    private static final int MAX_CONCURRENT_SUB_RESOURCES = 3;
+    // Time after which a sub-resource is abandoned
+    private static final long DETAILS_TIMEOUT_MILLIS = 10000;
+    private static final long REVIEWS_TIMEOUT_MILLIS = 15000;
+    // Number of sub-resources: details (with videos) and reviews
+    private static final int SUB_RESOURCES_COUNT = 2;
+    private static final FanOutFetcher fanOutFetcher =
+            new FanOutFetcher(MAX_CONCURRENT_SUB_RESOURCES);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final Movie tempMovie;
+    // Whether cached responses must be revalidated with the API (e.g. for pull-to-refresh)
+    private final boolean revalidate;
     private Movie movie = null;
+    // The last movie whose videos and reviews have all been loaded
+    private volatile Movie completeMovie = null;
+    // Signal used to cancel the running requests when the load gets cancelled
+    private CancellationSignal cancellationSignal;
 
-    public MovieDetailLoader(Context context, Movie tempMovie) {
+    /**
+     * The constructor
+     *
+     * @param context    the context
+     * @param tempMovie  the movie, without videos and reviews
+     * @param revalidate whether cached responses must be revalidated with the API
+     */
+    public MovieDetailLoader(Context context, Movie tempMovie, boolean revalidate) {
         super(context);
         this.tempMovie = tempMovie;
+        this.revalidate = revalidate;
     }
 
     @Override
@@ -62,31 +106,182 @@ public class MovieDetailLoader extends AsyncTaskLoader<Movie> {
     @Nullable
     @Override
     public Movie loadInBackground() {
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            cancellationSignal = new CancellationSignal();
+        }
+
         try {
-            movie = tempMovie;
-            int movieId = movie.getMovieId();
+            // The details of a favorite are read from the database, in a single result
+            if (!revalidate) {
+                Movie storedMovie = new Movie(tempMovie);
+                if (FavoriteDetailsStore.loadDetails(getContext().getContentResolver(),
+                        storedMovie)) {
+                    completeMovie = storedMovie;
+                    movie = storedMovie;
+                    return movie;
+                }
+            }
+
+            final Movie loadingMovie = new Movie(tempMovie);
+            final int movieId = loadingMovie.getMovieId();
+            final CancellationSignal loadSignal = cancellationSignal;
+            final LoadProgress progress = new LoadProgress(SUB_RESOURCES_COUNT);
+            final CachePolicy cachePolicy = revalidate ? CachePolicy.REVALIDATE
+                    : CachePolicy.DEFAULT;
 
-            // Get the videos
-            URL videosUrl = NetworkUtils.getVideosUrl(movieId);
-            String videosJsonResponse = NetworkUtils.getResponseFromHttpUrl(videosUrl);
-            VideoResponse videos = JsonUtils.parseVideos(videosJsonResponse);
-            movie.setVideos(videos);
+            List<FanOutFetcher.SubResource<?>> subResources = new ArrayList<>();
 
+            // Get the videos, appended to the details
+            subResources.add(new FanOutFetcher.SubResource<MovieDetailResponse>(
+                    DETAILS_TIMEOUT_MILLIS) {
+                @Override
+                public MovieDetailResponse load(CancellationSignal signal) throws IOException {
+                    return NetworkUtils.loadFromHttpUrl(NetworkUtils.getMovieDetailsUrl(movieId),
+                            JsonUtils.MOVIE_DETAILS_PARSER, signal, RequestPriority.VISIBLE,
+                            cachePolicy);
+                }
+
+                @Override
+                public void onResult(MovieDetailResponse details) {
+                    VideoResponse videos = (details != null) ? details.getVideos() : null;
+                    // If the videos are not available, we show that there are none
+                    loadingMovie.setVideos(videos != null ? videos : new VideoResponse(null));
+                    progress.videosLoaded = videos != null;
+                    onSubResourceLoaded(loadingMovie, details, progress, loadSignal);
+                }
+            });
 
             // Get the reviews
-            URL reviewsUrl = NetworkUtils.getReviewsUrl(movieId);
-            String reviewsJsonResponse = NetworkUtils.getResponseFromHttpUrl(reviewsUrl);
-            ReviewResponse reviews = JsonUtils.parseReviews(reviewsJsonResponse);
-            movie.setReviews(reviews);
+            subResources.add(new FanOutFetcher.SubResource<ReviewResponse>(REVIEWS_TIMEOUT_MILLIS) {
+                @Override
+                public ReviewResponse load(CancellationSignal signal) throws IOException {
+                    return NetworkUtils.loadFromHttpUrl(NetworkUtils.getReviewsUrl(movieId),
+                            JsonUtils.REVIEWS_PARSER, signal, RequestPriority.VISIBLE,
+                            cachePolicy);
+                }
+
+                @Override
+                public void onResult(ReviewResponse reviews) {
+                    // If the reviews are not available, we show that there are none
+                    loadingMovie.setReviews(reviews != null ? reviews
+                            : new ReviewResponse(0, 0, null));
+                    progress.reviewsLoaded = reviews != null;
+                    onSubResourceLoaded(loadingMovie, reviews, progress, loadSignal);
+                }
+            });
+
+            // Fetch all the sub-resources concurrently
+            fanOutFetcher.fetch(subResources, loadSignal);
+
+            // If nothing could be loaded, there is no data to show
+            if (progress.loaded == 0) {
+                return null;
+            }
 
             // Return the movie
+            movie = loadingMovie;
+
+            // If the movie is a favorite, store its details for the next time. What failed to
+            // load is not stored, so that it is not shown as missing
+            if (progress.videosLoaded && progress.reviewsLoaded) {
+                completeMovie = movie;
+                FavoriteDetailsStore.saveDetails(getContext().getContentResolver(), movie);
+            }
             return movie;
+        } catch (OperationCanceledException e) {
+            // The load has been cancelled, let the AsyncTaskLoader discard it
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
             return null;
+        } finally {
+            synchronized (this) {
+                cancellationSignal = null;
+            }
+        }
+    }
+
+    /**
+     * Called (on the loader thread) every time a sub-resource has been fetched. Unless this was the
+     * last one, a copy of the partially loaded movie is delivered on the main thread.
+     *
+     * @param loadingMovie the movie being loaded
+     * @param result       the sub-resource, null if it failed
+     * @param progress     the progress of the load
+     * @param signal       the cancellation signal of the load
+     */
+    private void onSubResourceLoaded(Movie loadingMovie, Object result, LoadProgress progress,
+                                     final CancellationSignal signal) {
+        progress.completed++;
+        if (result != null) {
+            progress.loaded++;
+        }
+
+        // The complete movie is delivered as the result of loadInBackground
+        if (progress.completed == progress.total) {
+            return;
+        }
+
+        // Deliver a copy, so that the LoaderManager sees a new result. The final result is posted
+        // to the main thread after this one, so a partial result never replaces it
+        final Movie partialMovie = new Movie(loadingMovie);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isStarted() && !signal.isCanceled()) {
+                    deliverResult(partialMovie);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stores the loaded videos and reviews of the movie in the database, if they have all been
+     * loaded (e.g. when the movie has just been added to the favorites)
+     */
+    public void saveFavoriteDetails() {
+        final Movie savingMovie = completeMovie;
+        if (savingMovie == null) {
+            return;
+        }
+
+        final Context context = getContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                FavoriteDetailsStore.saveDetails(context.getContentResolver(), savingMovie);
+            }
+        });
+    }
+
+    /**
+     * Cancel the running requests, so that the network and the parsing stop as soon as the load
+     * is cancelled (e.g. when the user leaves the activity)
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+
+        synchronized (this) {
+            if (cancellationSignal != null) {
+                cancellationSignal.cancel();
+            }
         }
     }
 
+    /**
+     * When the loader is reset (or abandoned), cancel any running load and drop cached data
+     */
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        movie = null;
+    }
+
     /**
      * Cache data
      *
@@ -96,4 +291,19 @@ public class MovieDetailLoader extends AsyncTaskLoader<Movie> {
         this.movie = movie;
         super.deliverResult(movie);
     }
+
+    /**
+     * Keeps track of the sub-resources fetched during a load
+     */
+    private static class LoadProgress {
+        private final int total;
+        private int completed = 0;
+        private int loaded = 0;
+        private boolean videosLoaded = false;
+        private boolean reviewsLoaded = false;
+
+        LoadProgress(int total) {
+            this.total = total;
+        }
+    }
 }
@@ -23,26 +23,42 @@
 package com.example.android.popularmovies.loaders;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 
-import com.example.android.popularmovies.data.objects.Movie;
-import com.example.android.popularmovies.data.objects.Page;
-import com.example.android.popularmovies.utils.JsonUtils;
+import com.example.android.popularmovies.data.objects.MovieResponse;
+import com.example.android.popularmovies.network.CachePolicy;
+import com.example.android.popularmovies.network.RequestPriority;
 import com.example.android.popularmovies.utils.NetworkUtils;
 
 import java.net.URL;
-import java.util.List;
 
 /**
  * A subclass of AsyncTaskLoader which is responsible for communicating with the API on a
- * background thread and retrieve a list of movies
+ * background thread and retrieve a page of a list of movies, through the MoviesListRepository.
+ * The page comes with its own paging state (page number and total pages), so loaders for
+ * different queries can run in parallel.
+ * <p>
+ * When the page is not in memory (e.g. on a cold start), the last known page for the query is
+ * delivered right away from disk, however old it is. The page is then loaded (or revalidated, if
+ * the cached one is stale) and delivered again only if it has changed.
  */
-public class MoviesListLoader extends AsyncTaskLoader<List<Movie>> {
-    private List<Movie> movies = null;
+public class MoviesListLoader extends AsyncTaskLoader<MoviesListLoader.LoadedPage> {
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final MoviesListRepository repository;
+    private LoadedPage loadedPage = null;
     private final int queryType;
     private final String queryString;
     private final String moviesSelectionPreference;
+    private final int page;
+    // Whether a cached response must be revalidated with the API (e.g. for pull-to-refresh)
+    private final boolean revalidate;
+    // Signal used to cancel the running request when the load gets cancelled
+    private CancellationSignal cancellationSignal;
 
     /**
      * The constructor
@@ -51,20 +67,43 @@ public class MoviesListLoader extends AsyncTaskLoader<List<Movie>> {
      * @param queryType                 the type of query
      * @param moviesSelectionPreference the selection preference
      * @param queryString               the query string (for search)
+     * @param page                      the page to be loaded
+     * @param revalidate                whether a cached page must be revalidated with the API
      */
-    public MoviesListLoader(Context context, int queryType, String queryString, String moviesSelectionPreference) {
+    public MoviesListLoader(Context context, int queryType, String queryString,
+                            String moviesSelectionPreference, int page, boolean revalidate) {
         super(context);
+        repository = MoviesListRepository.getInstance(context);
         this.queryType = queryType;
         this.moviesSelectionPreference = moviesSelectionPreference;
         this.queryString = queryString;
+        this.page = page;
+        this.revalidate = revalidate;
+    }
+
+    /**
+     * Gets the page loaded by this loader
+     *
+     * @return the page number
+     */
+    public int getPage() {
+        return page;
     }
 
     @Override
     protected void onStartLoading() {
+        // If the page has already been loaded or prefetched, use it (unless it must be revalidated)
+        if ((loadedPage == null) && !revalidate) {
+            MovieResponse cachedPage = MoviesPageCache.get(getPageKey());
+            if (cachedPage != null) {
+                loadedPage = new LoadedPage(cachedPage, false, false);
+            }
+        }
+
         // Check if there is cached data,
-        if (movies != null) {
+        if (loadedPage != null) {
             // If there is cached data, call deliverResult and pass the cached data as argument
-            deliverResult(movies);
+            deliverResult(loadedPage);
         } else {
             // If there is no cached data, force load
             forceLoad();
@@ -73,60 +112,203 @@ public class MoviesListLoader extends AsyncTaskLoader<List<Movie>> {
 
     @Nullable
     @Override
-    public List<Movie> loadInBackground() {
+    public LoadedPage loadInBackground() {
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            cancellationSignal = new CancellationSignal();
+        }
+
         // Get the url with which to make the http request
-        URL movieRequestUrl;
+        URL movieRequestUrl = getRequestUrl();
+
+        if (movieRequestUrl == null) {
+            return null;
+        }
+
+        try {
+            // Unless the page is being refreshed, show the last known page while loading
+            MovieResponse stalePage = null;
+            if (!revalidate) {
+                stalePage = deliverStalePage(movieRequestUrl);
+            }
+
+            // Make the http request to the API and parse the JSON response into a page of
+            // Movie objects. Identical requests still in flight (e.g. after a rotation) are shared.
+            // A revalidated page which hasn't changed is neither downloaded nor parsed again.
+            // The repository keeps the page in memory and on disk, and falls back to the stored
+            // page when offline
+            MovieResponse actualPage = repository.loadPage(getPageKey(), movieRequestUrl,
+                    cancellationSignal, RequestPriority.VISIBLE,
+                    revalidate ? CachePolicy.REVALIDATE : CachePolicy.DEFAULT);
+
+            // If the page couldn't be loaded, or it hasn't changed, go on showing the stale one.
+            // It is marked as unchanged, so that it is not shown again
+            if ((stalePage != null) && ((actualPage == null)
+                    || MoviesListRepository.isSamePage(stalePage, actualPage))) {
+                return new LoadedPage(stalePage, false, true);
+            }
+
+            return (actualPage != null) ? new LoadedPage(actualPage, false, false) : null;
+        } catch (OperationCanceledException e) {
+            // The load has been cancelled, let the AsyncTaskLoader discard it
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            synchronized (this) {
+                cancellationSignal = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the last known page from disk and delivers it on the main thread
+     *
+     * @param url the url of the page
+     * @return the stale page, or null if the page has never been loaded
+     */
+    private MovieResponse deliverStalePage(URL url) {
+        MovieResponse stalePage = repository.getLastKnownPage(getPageKey(), url,
+                cancellationSignal);
+        if (stalePage == null) {
+            return null;
+        }
+
+        // The final result is posted to the main thread after this one, so the stale page never
+        // replaces it
+        final LoadedPage deliveredPage = new LoadedPage(stalePage, true, false);
+        final CancellationSignal signal = cancellationSignal;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isStarted() && !signal.isCanceled()) {
+                    deliverResult(deliveredPage);
+                }
+            }
+        });
+        return stalePage;
+    }
+
+    /**
+     * Gets the key of the actual page of the query, in the MoviesPageCache
+     *
+     * @return the key
+     */
+    private PageKey getPageKey() {
+        return PageKey.forQuery(queryType, moviesSelectionPreference, queryString, page);
+    }
+
+    /**
+     * Gets the url of the actual page of the query
+     *
+     * @return the url, or null if the query type is unknown
+     */
+    private URL getRequestUrl() {
         switch (queryType) {
             case NetworkUtils.QUERY_LIST:
                 // Get url for popular or top rated movies
-                movieRequestUrl = NetworkUtils.getMoviesListUrl(
+                return NetworkUtils.getMoviesListUrl(
                         moviesSelectionPreference,
-                        String.valueOf(Page.getPage()),
+                        String.valueOf(page),
                         queryType,
                         null);
-                break;
             case NetworkUtils.QUERY_SEARCH:
                 // Get url for the search query
-                movieRequestUrl = NetworkUtils.getMoviesListUrl(
+                return NetworkUtils.getMoviesListUrl(
                         null,
-                        String.valueOf(Page.getSearchPage()),
+                        String.valueOf(page),
                         queryType,
                         queryString);
-                break;
             default:
-                movieRequestUrl = null;
-                break;
+                return null;
         }
+    }
 
-        try {
-            // Make the http request to the API
-            String jsonResponse = null;
-            if (movieRequestUrl != null) {
-                jsonResponse = NetworkUtils.getResponseFromHttpUrl(movieRequestUrl);
-            }
+    /**
+     * Cancel the running request, so that the network and the parsing stop as soon as the load is
+     * cancelled (e.g. when the loader is restarted for another page)
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
 
-            // Parse the JSON response into a List of Movie objects
-            if (jsonResponse != null) {
-                movies = JsonUtils.parseMoviesList(jsonResponse, queryType);
-            } else {
-                return null;
+        synchronized (this) {
+            if (cancellationSignal != null) {
+                cancellationSignal.cancel();
             }
-
-            // Return the list
-            return movies;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
         }
     }
 
+    /**
+     * When the loader is reset (or abandoned), cancel any running load and drop cached data
+     */
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        loadedPage = null;
+    }
+
     /**
      * Cache data
      *
-     * @param moviesList the List of Movie objects
+     * @param data the page of Movie objects
      */
-    public void deliverResult(List<Movie> moviesList) {
-        movies = moviesList;
-        super.deliverResult(moviesList);
+    @Override
+    public void deliverResult(LoadedPage data) {
+        if ((data != null) && data.isUnchanged()) {
+            // When delivered again (e.g. after a rotation), the page is shown as the actual one
+            loadedPage = new LoadedPage(data.getMoviesPage(), false, false);
+        } else {
+            loadedPage = data;
+        }
+        super.deliverResult(data);
+    }
+
+    /**
+     * A page delivered by the loader: either the last known page, shown while the actual one is
+     * loaded, or the actual page, which may be the same as the last known one
+     */
+    public static class LoadedPage {
+        private final MovieResponse moviesPage;
+        private final boolean isStale;
+        private final boolean isUnchanged;
+
+        LoadedPage(MovieResponse moviesPage, boolean isStale, boolean isUnchanged) {
+            this.moviesPage = moviesPage;
+            this.isStale = isStale;
+            this.isUnchanged = isUnchanged;
+        }
+
+        /**
+         * Gets the page of movies
+         *
+         * @return the page
+         */
+        public MovieResponse getMoviesPage() {
+            return moviesPage;
+        }
+
+        /**
+         * Checks if the page is the last known one, while the actual one is still being loaded
+         *
+         * @return true if the page is stale
+         */
+        public boolean isStale() {
+            return isStale;
+        }
+
+        /**
+         * Checks if the page is the stale one delivered before, which is up to date (or couldn't
+         * be loaded again), so that it doesn't need to be shown again
+         *
+         * @return true if the page hasn't changed
+         */
+        public boolean isUnchanged() {
+            return isUnchanged;
+        }
     }
 }
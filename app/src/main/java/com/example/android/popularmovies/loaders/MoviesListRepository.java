@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.loaders;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.os.CancellationSignal;
+import android.text.TextUtils;
+
+import com.example.android.popularmovies.data.db.MoviesPageStore;
+import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieResponse;
+import com.example.android.popularmovies.network.CachePolicy;
+import com.example.android.popularmovies.network.RequestPriority;
+import com.example.android.popularmovies.utils.JsonUtils;
+import com.example.android.popularmovies.utils.NetworkUtils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * The single source of the pages of movies (popular, top rated and search results) for the
+ * loaders. Pages come from the API and are kept both in memory (the MoviesPageCache) and on disk
+ * (the MoviesPageStore), so that browsing works offline and a cold start can show the last known
+ * pages right away.
+ */
+public class MoviesListRepository {
+    private static MoviesListRepository instance;
+    private final MoviesPageStore store;
+
+    private MoviesListRepository(Context context) {
+        store = MoviesPageStore.getInstance(context);
+    }
+
+    /**
+     * Gets the single instance of the MoviesListRepository
+     *
+     * @param context the context
+     * @return the MoviesListRepository
+     */
+    public static synchronized MoviesListRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new MoviesListRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the last known version of a page, however old it is: from the disk store or, if it is
+     * not there, from the HTTP cache
+     *
+     * @param key    the key of the page
+     * @param url    the url of the page
+     * @param signal the signal to cancel the read, may be null
+     * @return the page, or null if it has never been loaded
+     */
+    @WorkerThread
+    public MovieResponse getLastKnownPage(PageKey key, URL url,
+                                          @Nullable CancellationSignal signal) {
+        MoviesPageStore.StoredPage storedPage = store.getPage(key.getQueryKey(), key.getPage());
+        if (storedPage != null) {
+            return storedPage.getMoviesPage();
+        }
+
+        try {
+            return NetworkUtils.loadFromHttpUrl(url, JsonUtils.MOVIES_LIST_PARSER, signal,
+                    RequestPriority.VISIBLE, CachePolicy.CACHE_ONLY);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads a page from the API and keeps it in memory and on disk (if it has changed). If the API
+     * can't be reached, the stored page is returned instead.
+     *
+     * @param key         the key of the page
+     * @param url         the url of the page
+     * @param signal      the signal to cancel the request, may be null
+     * @param priority    the priority of the request
+     * @param cachePolicy how the HTTP response cache is used
+     * @return the page, or null if the response was not successful
+     * @throws IOException if the API can't be reached and the page is not stored
+     */
+    @WorkerThread
+    public MovieResponse loadPage(PageKey key, URL url, @Nullable CancellationSignal signal,
+                                  RequestPriority priority, CachePolicy cachePolicy)
+            throws IOException {
+        MovieResponse moviesPage;
+        try {
+            moviesPage = NetworkUtils.loadFromHttpUrl(url, JsonUtils.MOVIES_LIST_PARSER, signal,
+                    priority, cachePolicy);
+        } catch (IOException e) {
+            // Offline: use the stored page, if any
+            MoviesPageStore.StoredPage storedPage =
+                    store.getPage(key.getQueryKey(), key.getPage());
+            if (storedPage == null) {
+                throw e;
+            }
+            return storedPage.getMoviesPage();
+        }
+
+        if (moviesPage != null) {
+            MoviesPageCache.put(key, moviesPage);
+            // Pages served by the HTTP cache, or unchanged since they were stored (e.g. a 304),
+            // are not written again
+            MoviesPageStore.StoredPage storedPage =
+                    store.getPage(key.getQueryKey(), key.getPage());
+            if ((storedPage == null) || !isSamePage(storedPage.getMoviesPage(), moviesPage)) {
+                store.putPage(key.getQueryKey(), moviesPage);
+            }
+        }
+        return moviesPage;
+    }
+
+    /**
+     * Checks if two versions of a page have the same data
+     *
+     * @param oldPage the old version of the page
+     * @param newPage the new version of the page
+     * @return true if nothing has changed
+     */
+    public static boolean isSamePage(MovieResponse oldPage, MovieResponse newPage) {
+        if (oldPage == newPage) {
+            return true;
+        }
+        if ((oldPage == null) || (newPage == null)
+                || (oldPage.getTotalPages() != newPage.getTotalPages())) {
+            return false;
+        }
+
+        List<Movie> oldMovies = oldPage.getMovies();
+        List<Movie> newMovies = newPage.getMovies();
+        if (oldMovies.size() != newMovies.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldMovies.size(); i++) {
+            if (!isSameMovie(oldMovies.get(i), newMovies.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSameMovie(Movie oldMovie, Movie newMovie) {
+        return (oldMovie.getMovieId() == newMovie.getMovieId())
+                && TextUtils.equals(oldMovie.getOriginalTitle(), newMovie.getOriginalTitle())
+                && TextUtils.equals(oldMovie.getTitle(), newMovie.getTitle())
+                && TextUtils.equals(oldMovie.getPosterImageUrl(), newMovie.getPosterImageUrl())
+                && TextUtils.equals(oldMovie.getBackdropImageUrl(),
+                newMovie.getBackdropImageUrl())
+                && TextUtils.equals(oldMovie.getOverview(), newMovie.getOverview())
+                && (oldMovie.getUserRating() == newMovie.getUserRating())
+                && TextUtils.equals(oldMovie.getReleaseDate(), newMovie.getReleaseDate());
+    }
+}
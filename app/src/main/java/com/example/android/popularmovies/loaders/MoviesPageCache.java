@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.loaders;
+
+import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieResponse;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory cache of pages of movies, which sits between the MoviesListLoader and NetworkUtils.
+ * It is filled with every page loaded or prefetched, so that going back to a page doesn't
+ * download and parse it again.
+ * <p>
+ * The cache has both a budget of pages and a budget of (estimated) bytes: when one of them is
+ * exceeded, the least recently used pages are dropped. Hits, misses and evictions are counted.
+ */
+public class MoviesPageCache {
+    private static final int MAX_PAGES = 30;
+    private static final long MAX_BYTES = 1024 * 1024;
+    // Rough estimate of the memory taken by a Movie object, apart from its strings
+    private static final int MOVIE_OVERHEAD_BYTES = 96;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+    // Pages in access order, the least recently used first
+    private static final LinkedHashMap<PageKey, CachedPage> pages =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private static long sizeBytes = 0;
+    private static int hitCount = 0;
+    private static int missCount = 0;
+    private static int evictionCount = 0;
+
+    // Private constructor, which we use to avoid instantiating this class
+    private MoviesPageCache() {
+    }
+
+    /**
+     * Gets a cached page, counting a hit or a miss
+     *
+     * @param key the key of the page
+     * @return the page, or null if the page is not cached
+     */
+    public static synchronized MovieResponse get(PageKey key) {
+        CachedPage cachedPage = pages.get(key);
+        if (cachedPage != null) {
+            hitCount++;
+            return cachedPage.moviesPage;
+        } else {
+            missCount++;
+            return null;
+        }
+    }
+
+    /**
+     * Checks if a page is cached, without counting a hit or a miss and without changing the order
+     * of eviction
+     *
+     * @param key the key of the page
+     * @return true if the page is cached
+     */
+    public static synchronized boolean contains(PageKey key) {
+        return pages.containsKey(key);
+    }
+
+    /**
+     * Puts a page in the cache, dropping the least recently used pages if needed
+     *
+     * @param key        the key of the page
+     * @param moviesPage the page
+     */
+    public static synchronized void put(PageKey key, MovieResponse moviesPage) {
+        CachedPage cachedPage = new CachedPage(moviesPage,
+                estimateSizeBytes(moviesPage.getMovies()));
+
+        CachedPage previous = pages.put(key, cachedPage);
+        if (previous != null) {
+            sizeBytes -= previous.sizeBytes;
+        }
+        sizeBytes += cachedPage.sizeBytes;
+
+        trimToBudget();
+    }
+
+    /**
+     * Removes all the pages from the cache
+     */
+    public static synchronized void clear() {
+        pages.clear();
+        sizeBytes = 0;
+    }
+
+    public static synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public static synchronized int getMissCount() {
+        return missCount;
+    }
+
+    public static synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+
+    public static synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    public static synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Drops the least recently used pages until the cache is within its budgets
+     */
+    private static void trimToBudget() {
+        Iterator<Map.Entry<PageKey, CachedPage>> iterator = pages.entrySet().iterator();
+        while (((pages.size() > MAX_PAGES) || (sizeBytes > MAX_BYTES)) && iterator.hasNext()) {
+            CachedPage eldest = iterator.next().getValue();
+            iterator.remove();
+            sizeBytes -= eldest.sizeBytes;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Estimates the memory taken by a page of movies
+     *
+     * @param movies the List of Movie objects
+     * @return the estimated size in bytes
+     */
+    private static long estimateSizeBytes(List<Movie> movies) {
+        long size = 0;
+        for (Movie movie : movies) {
+            size += MOVIE_OVERHEAD_BYTES
+                    + estimateSizeBytes(movie.getOriginalTitle())
+                    + estimateSizeBytes(movie.getTitle())
+                    + estimateSizeBytes(movie.getPosterImageUrl())
+                    + estimateSizeBytes(movie.getBackdropImageUrl())
+                    + estimateSizeBytes(movie.getOverview())
+                    + estimateSizeBytes(movie.getReleaseDate());
+        }
+        return size;
+    }
+
+    private static long estimateSizeBytes(String string) {
+        return (string != null) ? STRING_OVERHEAD_BYTES + 2L * string.length() : 0;
+    }
+
+    /**
+     * A page in the cache, with its estimated size
+     */
+    private static class CachedPage {
+        private final MovieResponse moviesPage;
+        private final long sizeBytes;
+
+        CachedPage(MovieResponse moviesPage, long sizeBytes) {
+            this.moviesPage = moviesPage;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+}
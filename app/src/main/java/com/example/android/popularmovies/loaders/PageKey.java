@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.loaders;
+
+import com.example.android.popularmovies.utils.NetworkUtils;
+
+/**
+ * Identifies a page of movies: the category (popular, top rated or search), the search query,
+ * the page number and the language.
+ */
+public class PageKey {
+    // Category used for search results
+    private static final String CATEGORY_SEARCH = "search";
+    private final String category;
+    private final String query;
+    private final int page;
+    private final String language;
+
+    /**
+     * The constructor
+     *
+     * @param category the category (the sort selection, or search)
+     * @param query    the search query, null for lists
+     * @param page     the page number
+     * @param language the language
+     */
+    public PageKey(String category, String query, int page, String language) {
+        this.category = category;
+        this.query = query;
+        this.page = page;
+        this.language = language;
+    }
+
+    /**
+     * Gets the key of a page of a query
+     *
+     * @param queryType the type of query (list of movies or search)
+     * @param sortBy    the sort order preference (for lists)
+     * @param query     the search query (for searches)
+     * @param page      the page number
+     * @return the key of the page
+     */
+    public static PageKey forQuery(int queryType, String sortBy, String query, int page) {
+        if (queryType == NetworkUtils.QUERY_SEARCH) {
+            return new PageKey(CATEGORY_SEARCH, query, page, NetworkUtils.getLanguage());
+        } else {
+            return new PageKey(sortBy, null, page, NetworkUtils.getLanguage());
+        }
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Gets the key of the query the page belongs to, which is the same for all its pages
+     *
+     * @return the key of the query
+     */
+    public String getQueryKey() {
+        return category + (query != null ? "/" + query : "") + "/" + language;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PageKey)) {
+            return false;
+        }
+        PageKey other = (PageKey) o;
+        return (page == other.page)
+                && equal(category, other.category)
+                && equal(query, other.query)
+                && equal(language, other.language);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (category != null) ? category.hashCode() : 0;
+        result = 31 * result + ((query != null) ? query.hashCode() : 0);
+        result = 31 * result + page;
+        result = 31 * result + ((language != null) ? language.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return category + (query != null ? "/" + query : "") + "/" + page + "/" + language;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+}
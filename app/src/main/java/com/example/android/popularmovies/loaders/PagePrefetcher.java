@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.loaders;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieResponse;
+import com.example.android.popularmovies.network.CachePolicy;
+import com.example.android.popularmovies.network.PriorityTag;
+import com.example.android.popularmovies.network.RequestPriority;
+import com.example.android.popularmovies.network.RequestScheduler;
+import com.example.android.popularmovies.utils.NetworkUtils;
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fetches the pages next to the one the user is looking at in the background, and keeps them in
+ * the MoviesListRepository, so that navigating to an adjacent page shows it instantly (and works
+ * offline too). The posters of the next page are prefetched too, into the image cache of Picasso.
+ * <p>
+ * Pages and posters go through the RequestScheduler with a lower priority than the requests the
+ * user is waiting for, so they never delay them.
+ * <p>
+ * On metered networks (e.g. mobile data) nothing is prefetched, unless the policy allows it.
+ */
+public class PagePrefetcher {
+    // Whether pages are prefetched also on metered networks
+    private static final boolean PREFETCH_ON_METERED_NETWORK = false;
+    private static PagePrefetcher instance;
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private final MoviesListRepository repository;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Pages are prefetched one at a time, so that prefetching never competes too much with the
+    // page the user is waiting for
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Signal used to cancel the prefetching of pages which are not adjacent anymore
+    private CancellationSignal prefetchSignal;
+
+    private PagePrefetcher(Context context) {
+        this.context = context;
+        repository = MoviesListRepository.getInstance(context);
+        connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Gets the single instance of the PagePrefetcher
+     *
+     * @param context the context
+     * @return the PagePrefetcher
+     */
+    public static synchronized PagePrefetcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new PagePrefetcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Prefetches the previous and the next page of the one which has just been shown. Any
+     * prefetching still pending for other pages is cancelled.
+     *
+     * @param queryType  the type of query (list of movies or search)
+     * @param sortBy     the sort order preference (for lists)
+     * @param query      the search query (for searches)
+     * @param page       the page which has just been shown
+     * @param totalPages the total number of pages
+     */
+    public void prefetchAdjacentPages(int queryType, String sortBy, String query, int page,
+                                      int totalPages) {
+        final CancellationSignal signal;
+        synchronized (this) {
+            if (prefetchSignal != null) {
+                prefetchSignal.cancel();
+            }
+            prefetchSignal = new CancellationSignal();
+            signal = prefetchSignal;
+        }
+
+        if (!PREFETCH_ON_METERED_NETWORK && isNetworkMetered()) {
+            return;
+        }
+
+        // The next page is the most likely to be requested, so it goes first
+        if (page < totalPages) {
+            prefetchPage(queryType, sortBy, query, page + 1, true, signal);
+        }
+        if (page > 1) {
+            prefetchPage(queryType, sortBy, query, page - 1, false, signal);
+        }
+    }
+
+    /**
+     * Prefetches a single page, unless it is already cached
+     *
+     * @param queryType   the type of query (list of movies or search)
+     * @param sortBy      the sort order preference (for lists)
+     * @param query       the search query (for searches)
+     * @param page        the page to be prefetched
+     * @param withPosters whether the posters of the page are prefetched too
+     * @param signal      the signal to cancel the prefetching
+     */
+    private void prefetchPage(int queryType, String sortBy, String query, int page,
+                              final boolean withPosters, final CancellationSignal signal) {
+        final PageKey key = PageKey.forQuery(queryType, sortBy, query, page);
+        if (MoviesPageCache.contains(key)) {
+            return;
+        }
+
+        final URL url = NetworkUtils.getMoviesListUrl(sortBy, String.valueOf(page), queryType,
+                query);
+        if (url == null) {
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (signal.isCanceled() || MoviesPageCache.contains(key)) {
+                    return;
+                }
+
+                try {
+                    final MovieResponse moviesPage = repository.loadPage(key, url, signal,
+                            RequestPriority.PREFETCH, CachePolicy.DEFAULT);
+                    if (moviesPage != null) {
+                        // The posters come after the pages still to be prefetched
+                        if (withPosters) {
+                            executor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    prefetchPosters(moviesPage, signal);
+                                }
+                            });
+                        }
+                    }
+                } catch (IOException | OperationCanceledException e) {
+                    // Prefetching is only an optimization: the page will be loaded when needed
+                }
+            }
+        });
+    }
+
+    /**
+     * Prefetches the posters of a page into the image cache, as soon as the RequestScheduler
+     * allows each of them to start
+     *
+     * @param moviesPage the page
+     * @param signal     the signal to cancel the prefetching
+     */
+    private void prefetchPosters(MovieResponse moviesPage, CancellationSignal signal) {
+        RequestScheduler scheduler = NetworkUtils.getRequestScheduler();
+        for (Movie movie : moviesPage.getMovies()) {
+            if (signal.isCanceled()) {
+                return;
+            }
+
+            URL posterUrl = NetworkUtils.getImageUrl(movie.getPosterImageUrl(),
+                    NetworkUtils.IMAGE_POSTER);
+            if (posterUrl == null) {
+                continue;
+            }
+
+            PosterFetch posterFetch = new PosterFetch(posterUrl.toString(), signal);
+            try {
+                posterFetch.start(scheduler.acquire(
+                        new PriorityTag(RequestPriority.POSTER_PREFETCH), posterFetch));
+            } catch (IOException e) {
+                // Cancelled while waiting: the remaining posters are not needed anymore
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks if the active network is metered
+     *
+     * @return true if the active network is metered (or unknown)
+     */
+    private boolean isNetworkMetered() {
+        return (connectivityManager == null)
+                || ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    /**
+     * The prefetching of a single poster with Picasso, which holds its slot in the
+     * RequestScheduler until the image has been fetched.
+     * <p>
+     * Its lock only guards the cancellation flag and the handoff of the ticket: Picasso and the
+     * RequestScheduler (which can call back or cancel on the same thread) are never called while
+     * holding it.
+     */
+    private class PosterFetch implements RequestScheduler.Cancellable, Callback {
+        private final String posterUrl;
+        private final CancellationSignal signal;
+        private RequestScheduler.Ticket ticket;
+        private boolean canceled = false;
+
+        PosterFetch(String posterUrl, CancellationSignal signal) {
+            this.posterUrl = posterUrl;
+            this.signal = signal;
+        }
+
+        void start(RequestScheduler.Ticket ticket) {
+            boolean canceledBeforeStart;
+            synchronized (this) {
+                this.ticket = ticket;
+                canceledBeforeStart = canceled;
+            }
+
+            if (canceledBeforeStart) {
+                ticket.release();
+                return;
+            }
+
+            Picasso.with(context)
+                    .load(posterUrl)
+                    .priority(Picasso.Priority.LOW)
+                    .tag(this)
+                    .fetch(this);
+        }
+
+        @Override
+        public synchronized boolean isCanceled() {
+            return canceled || signal.isCanceled();
+        }
+
+        @Override
+        public void cancel() {
+            RequestScheduler.Ticket startedTicket;
+            synchronized (this) {
+                canceled = true;
+                startedTicket = ticket;
+            }
+
+            if (startedTicket != null) {
+                // Picasso doesn't call back for cancelled requests. Releasing twice (e.g. if the
+                // poster has just been fetched) has no effect
+                startedTicket.release();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Picasso.with(context).cancelTag(PosterFetch.this);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onSuccess() {
+            getTicket().release();
+        }
+
+        @Override
+        public void onError() {
+            getTicket().release();
+        }
+
+        private synchronized RequestScheduler.Ticket getTicket() {
+            return ticket;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+
+/**
+ * A circuit breaker which stops sending requests to an API which keeps failing.
+ * <p>
+ * While the circuit is closed, requests go through and consecutive failures are counted. When
+ * they reach the threshold, the circuit opens and every request fails right away with an
+ * OpenException. Once the open time has passed, a single trial request is let through: if it
+ * succeeds the circuit closes again, otherwise it stays open for another period.
+ */
+public class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAtMillis;
+    private boolean trialInFlight = false;
+
+    /**
+     * The constructor
+     *
+     * @param failureThreshold how many consecutive failures open the circuit
+     * @param openMillis       how long the circuit stays open before a trial request
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Checks if a request can be sent. A request which gets the permission must then report its
+     * outcome with onSuccess, onFailure or onIgnored.
+     *
+     * @throws OpenException if the circuit is open
+     */
+    public synchronized void acquirePermission() throws OpenException {
+        switch (state) {
+            case CLOSED:
+                return;
+            case OPEN:
+                if (SystemClock.elapsedRealtime() - openedAtMillis < openMillis) {
+                    throw new OpenException();
+                }
+                // Time for a trial request
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return;
+            case HALF_OPEN:
+            default:
+                if (trialInFlight) {
+                    throw new OpenException();
+                }
+                trialInFlight = true;
+        }
+    }
+
+    /**
+     * Reports that a request succeeded: the circuit closes
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    /**
+     * Reports that a request failed: the circuit opens if there have been too many failures in a
+     * row, or if it was the trial request
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if ((state == State.HALF_OPEN) || (consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAtMillis = SystemClock.elapsedRealtime();
+        }
+        trialInFlight = false;
+    }
+
+    /**
+     * Reports that a request ended without telling anything about the API (e.g. it has been
+     * cancelled)
+     */
+    public synchronized void onIgnored() {
+        trialInFlight = false;
+    }
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * The failure of a request which has not been sent because the circuit is open
+     */
+    public static class OpenException extends IOException {
+        OpenException() {
+            super("Circuit breaker open: the API is failing");
+        }
+    }
+}
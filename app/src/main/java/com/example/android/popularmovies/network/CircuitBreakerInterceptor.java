@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * An application interceptor which sends the requests through a CircuitBreaker. It sits inside the
+ * RetryInterceptor, so every attempt is counted, and in front of the connection, so network errors
+ * (e.g. DNS or connect failures) count as failures, as do 5xx responses. While the circuit is
+ * open, requests fail before reaching the cache or the network, and the OfflineCacheInterceptor
+ * can still serve a stale cached response.
+ * <p>
+ * Requests which only accept cached responses never reach the API, so they skip the breaker.
+ * Responses served by the cache and requests refused by the RateLimiter are not counted either.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerInterceptor(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.cacheControl().onlyIfCached()) {
+            return chain.proceed(request);
+        }
+
+        breaker.acquirePermission();
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (RateLimiter.WaitException e) {
+            breaker.onIgnored();
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            if (chain.call().isCanceled()) {
+                breaker.onIgnored();
+            } else {
+                breaker.onFailure();
+            }
+            throw e;
+        }
+
+        if (response.networkResponse() == null) {
+            // Served by the cache: it says nothing about the API
+            breaker.onIgnored();
+        } else if (response.code() >= 500) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+        return response;
+    }
+}
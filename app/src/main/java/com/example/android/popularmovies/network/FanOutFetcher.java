@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import android.support.annotation.Nullable;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches independent sub-resources (e.g. the videos and the reviews of a movie) concurrently on a
+ * bounded pool of threads.
+ * <p>
+ * Every sub-resource has its own timeout: a slow sub-resource is abandoned without delaying the
+ * others. The result of every sub-resource is handed to it on the calling thread as soon as it
+ * is available, so the caller can show partial results.
+ */
+public class FanOutFetcher {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The constructor
+     *
+     * @param maxConcurrency the maximum number of sub-resources fetched at the same time
+     */
+    public FanOutFetcher(int maxConcurrency) {
+        executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new FanOutThreadFactory());
+        // Don't keep idle threads around when no detail is being loaded
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Fetches the sub-resources concurrently and blocks until each of them has been fetched,
+     * has failed or has timed out. SubResource.onResult is called on the calling thread for each
+     * of them, in order of completion.
+     *
+     * @param resources the sub-resources to be fetched
+     * @param signal    the signal to cancel the whole fetch, may be null
+     * @throws OperationCanceledException if the fetch has been cancelled
+     */
+    public void fetch(List<? extends SubResource<?>> resources, @Nullable CancellationSignal signal) {
+        CompletionService<Object> completionService = new ExecutorCompletionService<>(executor);
+        final Map<Future<Object>, Pending> pendingFetches = new HashMap<>();
+
+        // Start all the fetches
+        long now = System.nanoTime();
+        for (final SubResource<?> resource : resources) {
+            final CancellationSignal resourceSignal = new CancellationSignal();
+            Future<Object> future = completionService.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return resource.load(resourceSignal);
+                }
+            });
+            long deadline = now + TimeUnit.MILLISECONDS.toNanos(resource.timeoutMillis);
+            pendingFetches.put(future, new Pending(resource, resourceSignal, deadline));
+        }
+
+        // If the whole fetch gets cancelled, cancel every pending sub-resource
+        if (signal != null) {
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    synchronized (pendingFetches) {
+                        for (Map.Entry<Future<Object>, Pending> entry : pendingFetches.entrySet()) {
+                            entry.getValue().cancel(entry.getKey());
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            while (true) {
+                long nextDeadline;
+                synchronized (pendingFetches) {
+                    if (pendingFetches.isEmpty()) {
+                        break;
+                    }
+                    nextDeadline = Long.MAX_VALUE;
+                    for (Pending pending : pendingFetches.values()) {
+                        nextDeadline = Math.min(nextDeadline, pending.deadline);
+                    }
+                }
+
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+
+                // Wait for the next sub-resource, but not past the nearest deadline
+                Future<Object> completed = null;
+                long waitNanos = nextDeadline - System.nanoTime();
+                if (waitNanos > 0) {
+                    completed = completionService.poll(waitNanos, TimeUnit.NANOSECONDS);
+                }
+
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+
+                if (completed != null) {
+                    Pending pending;
+                    synchronized (pendingFetches) {
+                        pending = pendingFetches.remove(completed);
+                    }
+                    if (pending != null) {
+                        pending.deliver(getResult(completed));
+                    }
+                } else {
+                    // Give up on the sub-resources which have timed out
+                    for (Pending pending : removeExpired(pendingFetches, System.nanoTime())) {
+                        pending.deliver(null);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+    }
+
+    /**
+     * Removes (and cancels) the pending fetches whose deadline has passed
+     *
+     * @param pendingFetches the pending fetches
+     * @param now            the actual time, in nanoseconds
+     * @return the expired fetches
+     */
+    private static List<Pending> removeExpired(Map<Future<Object>, Pending> pendingFetches,
+                                               long now) {
+        List<Pending> expired = new ArrayList<>();
+        synchronized (pendingFetches) {
+            Iterator<Map.Entry<Future<Object>, Pending>> iterator =
+                    pendingFetches.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Future<Object>, Pending> entry = iterator.next();
+                if (entry.getValue().deadline - now <= 0) {
+                    entry.getValue().cancel(entry.getKey());
+                    expired.add(entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Gets the result of a completed fetch
+     *
+     * @param future the completed fetch
+     * @return the result, or null if the fetch failed
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    private static Object getResult(Future<Object> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // A failed sub-resource doesn't fail the others
+            e.getCause().printStackTrace();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A sub-resource which can be fetched independently from the others
+     *
+     * @param <T> the type of the sub-resource
+     */
+    public abstract static class SubResource<T> {
+        private final long timeoutMillis;
+
+        /**
+         * The constructor
+         *
+         * @param timeoutMillis the time after which the sub-resource is abandoned
+         */
+        protected SubResource(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * Loads the sub-resource. This is called on a thread of the pool.
+         *
+         * @param signal the signal which is cancelled when the sub-resource is abandoned
+         * @return the sub-resource
+         * @throws IOException if the sub-resource could not be loaded
+         */
+        public abstract T load(CancellationSignal signal) throws IOException;
+
+        /**
+         * Receives the sub-resource. This is called on the thread which called fetch().
+         *
+         * @param result the sub-resource, or null if it failed or timed out
+         */
+        public abstract void onResult(@Nullable T result);
+    }
+
+    /**
+     * A sub-resource which is being fetched
+     */
+    private static class Pending {
+        private final SubResource<?> resource;
+        private final CancellationSignal signal;
+        private final long deadline;
+
+        Pending(SubResource<?> resource, CancellationSignal signal, long deadline) {
+            this.resource = resource;
+            this.signal = signal;
+            this.deadline = deadline;
+        }
+
+        void cancel(Future<Object> future) {
+            signal.cancel();
+            future.cancel(true);
+        }
+
+        void deliver(Object result) {
+            // The result comes from resource.load(), so it is always of the resource's type
+            @SuppressWarnings("unchecked")
+            SubResource<Object> typedResource = (SubResource<Object>) resource;
+            typedResource.onResult(result);
+        }
+    }
+
+    /**
+     * Names the threads of the pool, to recognize them when debugging
+     */
+    private static class FanOutThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "FanOutFetcher #" + count.getAndIncrement());
+        }
+    }
+}
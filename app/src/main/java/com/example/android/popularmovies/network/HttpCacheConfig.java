@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the on-disk HTTP response cache used by NetworkUtils.
+ * <p>
+ * List pages (popular, top rated, search) change often, so they are kept fresh only for a short
+ * time. Videos and reviews of a single movie rarely change, so they can be kept for much longer.
+ * When the network fails, a cached response may still be served if it is not older than
+ * maxStaleSeconds.
+ */
+public class HttpCacheConfig {
+    // Default values
+    private static final long DEFAULT_CACHE_SIZE_BYTES = 10 * 1024 * 1024;
+    private static final long DEFAULT_LIST_TTL_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+    private static final long DEFAULT_DETAIL_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    private static final long DEFAULT_MAX_STALE_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
+    private final long cacheSizeBytes;
+    private final long listTtlSeconds;
+    private final long detailTtlSeconds;
+    private final long maxStaleSeconds;
+    private final boolean serveStaleOnFailure;
+
+    /**
+     * The constructor
+     *
+     * @param cacheSizeBytes      the maximum size of the cache on disk
+     * @param listTtlSeconds      how long a list page is considered fresh
+     * @param detailTtlSeconds    how long videos and reviews are considered fresh
+     * @param maxStaleSeconds     how old a cached response may be when served after a failure
+     * @param serveStaleOnFailure whether to serve stale cached responses when the network fails
+     */
+    public HttpCacheConfig(long cacheSizeBytes,
+                           long listTtlSeconds,
+                           long detailTtlSeconds,
+                           long maxStaleSeconds,
+                           boolean serveStaleOnFailure) {
+        this.cacheSizeBytes = cacheSizeBytes;
+        this.listTtlSeconds = listTtlSeconds;
+        this.detailTtlSeconds = detailTtlSeconds;
+        this.maxStaleSeconds = maxStaleSeconds;
+        this.serveStaleOnFailure = serveStaleOnFailure;
+    }
+
+    /**
+     * Gets the default configuration
+     *
+     * @return the default configuration
+     */
+    public static HttpCacheConfig defaultConfig() {
+        return new HttpCacheConfig(DEFAULT_CACHE_SIZE_BYTES,
+                DEFAULT_LIST_TTL_SECONDS,
+                DEFAULT_DETAIL_TTL_SECONDS,
+                DEFAULT_MAX_STALE_SECONDS,
+                true);
+    }
+
+    public long getCacheSizeBytes() {
+        return cacheSizeBytes;
+    }
+
+    public long getListTtlSeconds() {
+        return listTtlSeconds;
+    }
+
+    public long getDetailTtlSeconds() {
+        return detailTtlSeconds;
+    }
+
+    public long getMaxStaleSeconds() {
+        return maxStaleSeconds;
+    }
+
+    public boolean isServeStaleOnFailure() {
+        return serveStaleOnFailure;
+    }
+}
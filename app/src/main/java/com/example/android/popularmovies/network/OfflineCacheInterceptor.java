@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * An application interceptor which serves a stale cached response when the network request
+ * fails, so that pages already seen remain available on flaky or missing connections.
+ */
+public class OfflineCacheInterceptor implements Interceptor {
+    private final HttpCacheConfig config;
+
+    public OfflineCacheInterceptor(HttpCacheConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+
+        try {
+            return chain.proceed(request);
+        } catch (IOException e) {
+            if (!config.isServeStaleOnFailure() || !request.method().equals("GET")) {
+                throw e;
+            }
+
+            // Retry the request reading only from the cache, accepting stale responses
+            CacheControl offlineCacheControl = new CacheControl.Builder()
+                    .onlyIfCached()
+                    .maxStale((int) config.getMaxStaleSeconds(), TimeUnit.SECONDS)
+                    .build();
+            Request offlineRequest = request.newBuilder()
+                    .cacheControl(offlineCacheControl)
+                    .build();
+
+            Response response = chain.proceed(offlineRequest);
+            if (response.isSuccessful()) {
+                return response;
+            }
+
+            // Nothing usable in the cache (OkHttp answers with 504): report the original error
+            response.close();
+            throw e;
+        }
+    }
+}
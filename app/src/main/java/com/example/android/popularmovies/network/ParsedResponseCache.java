@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import android.support.v4.util.LruCache;
+
+import okhttp3.Response;
+
+/**
+ * Keeps the objects parsed from the latest responses, together with the validator (ETag or
+ * Last-Modified) of each response.
+ * <p>
+ * When a response has the same validator as the one already parsed for the same request (e.g. a
+ * cached response, or a 304 Not Modified after a conditional GET), its body hasn't changed: the
+ * parsed object can be reused instead of reading and parsing the body again.
+ */
+public class ParsedResponseCache {
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private final LruCache<Object, Entry> entries;
+    private int reuseCount = 0;
+
+    /**
+     * The constructor
+     *
+     * @param maxEntries the maximum number of parsed responses kept
+     */
+    public ParsedResponseCache(int maxEntries) {
+        entries = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Gets the object parsed from an identical response
+     *
+     * @param key      the key of the request
+     * @param response the new response
+     * @return the parsed object, or null if the response has changed (or has no validator)
+     */
+    public synchronized Object get(Object key, Response response) {
+        String validator = getValidator(response);
+        Entry entry = entries.get(key);
+        if ((validator == null) || (entry == null) || !validator.equals(entry.validator)) {
+            return null;
+        }
+        reuseCount++;
+        return entry.parsed;
+    }
+
+    /**
+     * Keeps the object parsed from a response, if the response has a validator
+     *
+     * @param key      the key of the request
+     * @param response the response
+     * @param parsed   the object parsed from its body
+     */
+    public synchronized void put(Object key, Response response, Object parsed) {
+        String validator = getValidator(response);
+        if (validator != null) {
+            entries.put(key, new Entry(validator, parsed));
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Gets how many times a parsed object has been reused
+     *
+     * @return the number of reuses
+     */
+    public synchronized int getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * Gets the validator of a response: its ETag or, if it has none, its Last-Modified date
+     *
+     * @param response the response
+     * @return the validator, or null if the response has none
+     */
+    private static String getValidator(Response response) {
+        String etag = response.header(HEADER_ETAG);
+        if (etag != null) {
+            return HEADER_ETAG + ": " + etag;
+        }
+        String lastModified = response.header(HEADER_LAST_MODIFIED);
+        if (lastModified != null) {
+            return HEADER_LAST_MODIFIED + ": " + lastModified;
+        }
+        return null;
+    }
+
+    /**
+     * A parsed object, with the validator of the response it has been parsed from
+     */
+    private static class Entry {
+        private final String validator;
+        private final Object parsed;
+
+        Entry(String validator, Object parsed) {
+            this.validator = validator;
+            this.parsed = parsed;
+        }
+    }
+}
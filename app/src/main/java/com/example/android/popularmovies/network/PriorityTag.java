@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+/**
+ * The tag attached to an OkHttp request to carry its priority to the interceptors.
+ * <p>
+ * The priority can only be raised: when a user-visible caller joins a request already started
+ * by a prefetch, the request moves to the user-visible lane even if it is already waiting.
+ */
+public class PriorityTag {
+    private volatile RequestPriority priority;
+
+    public PriorityTag(RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Raises the priority, if the new one is higher
+     *
+     * @param newPriority the new priority
+     */
+    public synchronized void raiseTo(RequestPriority newPriority) {
+        if (newPriority.isHigherThan(priority)) {
+            priority = newPriority;
+        }
+    }
+}
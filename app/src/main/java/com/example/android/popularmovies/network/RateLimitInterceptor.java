@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * A network interceptor which keeps the requests that actually reach the API within its rate
+ * limit: every request waits for a token of the RateLimiter, in the lane of its priority.
+ * Responses served by the cache don't go through it, so they never wait.
+ * <p>
+ * When the API answers 429 Too Many Requests, all the requests are paused for the time given in
+ * the Retry-After header.
+ */
+public class RateLimitInterceptor implements Interceptor {
+    // The HTTP status code for Too Many Requests
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    // Pause used when the API doesn't say how long to wait
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private final RateLimiter limiter;
+
+    public RateLimitInterceptor(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Gets how long the API asked to wait before the next request
+     *
+     * @param response the 429 response
+     * @return the time to wait in milliseconds
+     */
+    public static long getRetryAfterMillis(Response response) {
+        String retryAfter = response.header(HEADER_RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                long seconds = Long.parseLong(retryAfter.trim());
+                if (seconds >= 0) {
+                    return TimeUnit.SECONDS.toMillis(seconds);
+                }
+            } catch (NumberFormatException e) {
+                // Not a number of seconds (e.g. an HTTP date): use the default pause
+            }
+        }
+        return DEFAULT_RETRY_AFTER_MILLIS;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+
+        limiter.acquire(getPriorityTag(request), chain.call());
+
+        Response response = chain.proceed(request);
+        if (response.code() == HTTP_TOO_MANY_REQUESTS) {
+            limiter.pause(getRetryAfterMillis(response));
+        }
+        return response;
+    }
+
+    /**
+     * Gets the priority of a request. Requests without a PriorityTag are user-visible.
+     *
+     * @param request the request
+     * @return the PriorityTag of the request
+     */
+    private static PriorityTag getPriorityTag(Request request) {
+        Object tag = request.tag();
+        if (tag instanceof PriorityTag) {
+            return (PriorityTag) tag;
+        }
+        return new PriorityTag(RequestPriority.VISIBLE);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+
+/**
+ * A token bucket which keeps the requests within the rate limit of the API.
+ * <p>
+ * Every request takes a token; tokens are refilled at a fixed rate up to the capacity of the
+ * bucket, which allows short bursts. Part of the bucket is reserved to user-visible requests, and
+ * background requests also wait while a user-visible one is waiting, so background work never
+ * starves the page the user is looking at.
+ * <p>
+ * When the API answers 429 Too Many Requests, the bucket is emptied and paused for the time
+ * given in the Retry-After header.
+ */
+public class RateLimiter {
+    // The API allows 40 requests every 10 seconds
+    private static final int DEFAULT_CAPACITY = 40;
+    private static final double DEFAULT_TOKENS_PER_SECOND = 4;
+    private static final int DEFAULT_RESERVED_FOR_VISIBLE = 10;
+    private static final long DEFAULT_MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    // Waiting threads wake up at least this often, to check if their call has been cancelled
+    private static final long MAX_WAIT_SLICE_MILLIS = 100;
+
+    private final int capacity;
+    private final double tokensPerNano;
+    private final int reservedForVisible;
+    private final long maxWaitNanos;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private int visibleWaiters = 0;
+
+    /**
+     * The constructor
+     *
+     * @param capacity           the maximum number of tokens (the largest burst of requests)
+     * @param tokensPerSecond    how many tokens are refilled every second
+     * @param reservedForVisible how many tokens only user-visible requests can take
+     * @param maxWaitMillis      the longest pause a request waits for, before failing
+     */
+    public RateLimiter(int capacity, double tokensPerSecond, int reservedForVisible,
+                       long maxWaitMillis) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.reservedForVisible = reservedForVisible;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * Gets a RateLimiter with the limits of the API
+     *
+     * @return the RateLimiter
+     */
+    public static RateLimiter defaultLimiter() {
+        return new RateLimiter(DEFAULT_CAPACITY, DEFAULT_TOKENS_PER_SECOND,
+                DEFAULT_RESERVED_FOR_VISIBLE, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Waits until the request can be made, and takes a token
+     *
+     * @param tag  the priority of the request, read again every time the request wakes up
+     * @param call the call of the request, the wait stops if it gets cancelled
+     * @throws IOException if the call is cancelled, or a WaitException if the API asked to wait
+     *                     too long
+     */
+    public synchronized void acquire(PriorityTag tag, Call call) throws IOException {
+        boolean countedAsVisible = false;
+        try {
+            while (true) {
+                if (call.isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+
+                boolean visible = tag.getPriority().isUserVisible();
+                if (visible && !countedAsVisible) {
+                    visibleWaiters++;
+                    countedAsVisible = true;
+                }
+
+                long now = System.nanoTime();
+                refill(now);
+
+                long waitNanos;
+                if (pausedUntilNanos - now > 0) {
+                    // The API asked to slow down
+                    waitNanos = pausedUntilNanos - now;
+                    if (waitNanos > maxWaitNanos) {
+                        throw new WaitException("Rate limited by the API for "
+                                + TimeUnit.NANOSECONDS.toSeconds(waitNanos) + " s", null);
+                    }
+                } else {
+                    double minTokens = visible ? 1 : 1 + reservedForVisible;
+                    boolean behindVisible = !visible && (visibleWaiters > 0);
+                    if ((tokens >= minTokens) && !behindVisible) {
+                        tokens -= 1;
+                        return;
+                    }
+                    waitNanos = (long) Math.ceil(Math.max(minTokens - tokens, 0) / tokensPerNano);
+                }
+
+                long waitMillis = Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMillis(waitNanos),
+                        MAX_WAIT_SLICE_MILLIS));
+                try {
+                    wait(waitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new WaitException("Interrupted while waiting for the rate limit", e);
+                }
+            }
+        } finally {
+            if (countedAsVisible) {
+                visibleWaiters--;
+                // Background requests may be waiting behind this one
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops all the requests for a while, after the API answered 429 Too Many Requests
+     *
+     * @param delayMillis how long to wait, from the Retry-After header
+     */
+    public synchronized void pause(long delayMillis) {
+        long pausedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        if (pausedUntil - pausedUntilNanos > 0) {
+            pausedUntilNanos = pausedUntil;
+        }
+        tokens = 0;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * The failure of a request which has not been sent because it couldn't wait for the rate
+     * limit, which says nothing about the health of the API
+     */
+    public static class WaitException extends IOException {
+        WaitException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+/**
+ * The priority class of a request. Requests for what the user is looking at come first, work done
+ * ahead of time (or in the background) comes after them. Every class has its own cap on the number
+ * of requests running at the same time.
+ */
+public enum RequestPriority {
+    // The list page or the movie details the user is waiting for
+    VISIBLE(4),
+    // Pages prefetched next to the one the user is looking at
+    PREFETCH(2),
+    // Posters of the prefetched pages
+    POSTER_PREFETCH(2),
+    // Background work nobody is waiting for
+    BACKGROUND(1);
+
+    private final int maxConcurrentRequests;
+
+    RequestPriority(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Gets the maximum number of requests of this class which can run at the same time
+     *
+     * @return the maximum number of requests
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Checks if the user is waiting for the result of the request
+     *
+     * @return true if the request is user-visible
+     */
+    public boolean isUserVisible() {
+        return this == VISIBLE;
+    }
+
+    /**
+     * Checks if this class comes before another one
+     *
+     * @param other the other class
+     * @return true if this class has a higher priority
+     */
+    public boolean isHigherThan(RequestPriority other) {
+        return ordinal() < other.ordinal();
+    }
+}
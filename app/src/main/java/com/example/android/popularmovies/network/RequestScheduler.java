@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides when a request can start, according to its priority class.
+ * <p>
+ * Every class has a cap on the number of its requests running at the same time, and all the
+ * classes share a total cap. A request is deferred while a request of a higher class is waiting
+ * and, unless it is user-visible, while any user-visible request is running: so prefetching never
+ * delays the page the user is waiting for. When a user-visible request finds all the slots taken,
+ * the most recent request of the lowest class is preempted (cancelled) to make room for it.
+ */
+public class RequestScheduler {
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    // Waiting requests wake up at least this often, to check if they have been cancelled
+    private static final long MAX_WAIT_SLICE_MILLIS = 100;
+    private final int maxConcurrentRequests;
+    private final int[] runningByClass = new int[RequestPriority.values().length];
+    private final List<Ticket> running = new ArrayList<>();
+    private final List<Ticket> waiting = new ArrayList<>();
+
+    /**
+     * The constructor
+     *
+     * @param maxConcurrentRequests the maximum number of requests running at the same time
+     */
+    public RequestScheduler(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Gets a RequestScheduler with the default total cap
+     *
+     * @return the RequestScheduler
+     */
+    public static RequestScheduler defaultScheduler() {
+        return new RequestScheduler(DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Waits until the request can start. The returned ticket must be released when the request
+     * is over, successful or not.
+     *
+     * @param tag     the priority of the request, read again every time the request wakes up
+     * @param request the request, which is cancelled if it gets preempted
+     * @return the ticket of the running request
+     * @throws IOException if the request is cancelled while waiting
+     */
+    public Ticket acquire(PriorityTag tag, Cancellable request) throws IOException {
+        Ticket ticket = new Ticket(tag, request);
+        synchronized (this) {
+            waiting.add(ticket);
+        }
+        try {
+            while (true) {
+                if (request.isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+
+                Ticket victim = null;
+                synchronized (this) {
+                    RequestPriority priority = tag.getPriority();
+                    if (canStart(priority)) {
+                        ticket.priority = priority;
+                        runningByClass[priority.ordinal()]++;
+                        running.add(ticket);
+                        return ticket;
+                    }
+
+                    if (priority.isUserVisible() && (running.size() >= maxConcurrentRequests)) {
+                        victim = choosePreemptionVictim();
+                    }
+
+                    if (victim == null) {
+                        try {
+                            wait(MAX_WAIT_SLICE_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrupted while waiting to be scheduled", e);
+                        }
+                    }
+                }
+
+                // The victim is cancelled outside of the lock: cancelling it may release its
+                // ticket, or take locks of its own, on this thread
+                if (victim != null) {
+                    victim.request.cancel();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                waiting.remove(ticket);
+                // Requests of lower classes may be waiting behind this one
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Checks if a request of a class can start now
+     *
+     * @param priority the class of the request
+     * @return true if the request can start
+     */
+    private boolean canStart(RequestPriority priority) {
+        if ((running.size() >= maxConcurrentRequests)
+                || (runningByClass[priority.ordinal()] >= priority.getMaxConcurrentRequests())) {
+            return false;
+        }
+        if (!priority.isUserVisible()
+                && (runningByClass[RequestPriority.VISIBLE.ordinal()] > 0)) {
+            return false;
+        }
+        for (Ticket other : waiting) {
+            if (other.tag.getPriority().isHigherThan(priority)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Chooses the most recent running request of the lowest class, if it is not user-visible, and
+     * marks it as preempted. The caller must cancel it, once it doesn't hold the lock anymore: its
+     * slot is freed when the cancelled request releases its ticket.
+     *
+     * @return the request to be cancelled, or null if there is none
+     */
+    private Ticket choosePreemptionVictim() {
+        Ticket victim = null;
+        for (Ticket ticket : running) {
+            RequestPriority priority = ticket.tag.getPriority();
+            if (!priority.isUserVisible() && !ticket.preempted
+                    && ((victim == null) || !victim.tag.getPriority().isHigherThan(priority))) {
+                victim = ticket;
+            }
+        }
+
+        if (victim != null) {
+            victim.preempted = true;
+        }
+        return victim;
+    }
+
+    private synchronized void release(Ticket ticket) {
+        if (running.remove(ticket)) {
+            runningByClass[ticket.priority.ordinal()]--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * A request which can be cancelled, e.g. an OkHttp Call
+     */
+    public interface Cancellable {
+        boolean isCanceled();
+
+        void cancel();
+    }
+
+    /**
+     * The permission to run a request, which must be released when the request is over
+     */
+    public class Ticket {
+        private final PriorityTag tag;
+        private final Cancellable request;
+        // The class in which the request has been started
+        private RequestPriority priority;
+        private boolean preempted = false;
+
+        private Ticket(PriorityTag tag, Cancellable request) {
+            this.tag = tag;
+            this.request = request;
+        }
+
+        /**
+         * Releases the slot of the request
+         */
+        public void release() {
+            RequestScheduler.this.release(this);
+        }
+    }
+}
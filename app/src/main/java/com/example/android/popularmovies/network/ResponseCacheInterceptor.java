@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * A network interceptor which rewrites the caching headers of the API responses, so that the
+ * OkHttp Cache keeps each endpoint for the time set in the HttpCacheConfig.
+ */
+public class ResponseCacheInterceptor implements Interceptor {
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_PRAGMA = "Pragma";
+    private final HttpCacheConfig config;
+
+    public ResponseCacheInterceptor(HttpCacheConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+
+        // Only successful GET responses are worth caching. A 304 Not Modified refreshes the cached
+        // response with its headers, so it gets the same time to live
+        boolean isNotModified = response.code() == HttpURLConnection.HTTP_NOT_MODIFIED;
+        if (!request.method().equals("GET") || !(response.isSuccessful() || isNotModified)) {
+            return response;
+        }
+
+        long ttlSeconds = getTtlSeconds(request.url());
+        if (ttlSeconds <= 0) {
+            return response;
+        }
+
+        return response.newBuilder()
+                .removeHeader(HEADER_PRAGMA)
+                .header(HEADER_CACHE_CONTROL, "public, max-age=" + ttlSeconds)
+                .build();
+    }
+
+    /**
+     * Gets the time to live for the endpoint of the url
+     * Details: /movie/{id} (with appended videos), /movie/{id}/videos, /movie/{id}/reviews
+     * Lists: /movie/popular, /movie/top_rated, /search/movie
+     *
+     * @param url the url of the request
+     * @return the time to live in seconds, or 0 if the endpoint is not cached
+     */
+    private long getTtlSeconds(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        if (segments.isEmpty()) {
+            return 0;
+        }
+
+        String lastSegment = segments.get(segments.size() - 1);
+        boolean isMovieDetails = (segments.size() >= 2)
+                && segments.get(segments.size() - 2).equals("movie")
+                && lastSegment.matches("\\d+");
+        if (lastSegment.equals("videos") || lastSegment.equals("reviews") || isMovieDetails) {
+            return config.getDetailTtlSeconds();
+        }
+
+        if (lastSegment.equals("popular") || lastSegment.equals("top_rated")
+                || lastSegment.equals("movie")) {
+            return config.getListTtlSeconds();
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of how NetworkUtils deals with a failing API.
+ * <p>
+ * Idempotent requests which fail with a network error or a 502, 503 or 504 response are retried
+ * up to maxRetries times, waiting a random time up to an exponentially growing backoff between
+ * attempts. After failureThreshold consecutive failures the circuit breaker opens: requests fail
+ * right away (so cached data can be served instead) until openMillis have passed, then a single
+ * trial request decides if the API is back.
+ */
+public class RetryConfig {
+    // Default values
+    private static final int DEFAULT_MAX_RETRIES = 2;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(4);
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    /**
+     * The constructor
+     *
+     * @param maxRetries           how many times a failed request is retried
+     * @param initialBackoffMillis the backoff before the first retry, doubled at every retry
+     * @param maxBackoffMillis     the maximum backoff between two attempts
+     * @param failureThreshold     how many consecutive failures open the circuit breaker
+     * @param openMillis           how long the circuit breaker stays open
+     */
+    public RetryConfig(int maxRetries,
+                       long initialBackoffMillis,
+                       long maxBackoffMillis,
+                       int failureThreshold,
+                       long openMillis) {
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Gets the default configuration
+     *
+     * @return the default configuration
+     */
+    public static RetryConfig defaultConfig() {
+        return new RetryConfig(DEFAULT_MAX_RETRIES,
+                DEFAULT_INITIAL_BACKOFF_MILLIS,
+                DEFAULT_MAX_BACKOFF_MILLIS,
+                DEFAULT_FAILURE_THRESHOLD,
+                DEFAULT_OPEN_MILLIS);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+}
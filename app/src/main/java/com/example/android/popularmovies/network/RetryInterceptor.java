@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.io.IOException;
+import java.util.Random;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * An application interceptor which retries idempotent requests (GET and HEAD) failing with a
+ * network error or with a 502, 503 or 504 response.
+ * <p>
+ * Before every retry it waits a random time between zero and a backoff which doubles at every
+ * attempt (up to a maximum), so clients failing together don't retry together. Requests refused
+ * by an open CircuitBreaker or by the RateLimiter, and cancelled requests, are not retried. When
+ * the last attempt gets a 5xx response, the request fails with an IOException, so the
+ * OfflineCacheInterceptor can serve a stale cached response.
+ */
+public class RetryInterceptor implements Interceptor {
+    // Sleeping requests wake up at least this often, to check if they have been cancelled
+    private static final long MAX_SLEEP_SLICE_MILLIS = 100;
+    private final RetryConfig config;
+    private final Random random = new Random();
+
+    public RetryInterceptor(RetryConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!isIdempotent(request)) {
+            return chain.proceed(request);
+        }
+
+        int attempt = 0;
+        while (true) {
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (CircuitBreaker.OpenException | RateLimiter.WaitException e) {
+                throw e;
+            } catch (IOException e) {
+                if (chain.call().isCanceled() || (attempt == config.getMaxRetries())) {
+                    throw e;
+                }
+                backOff(chain, attempt++);
+                continue;
+            }
+
+            if (!isRetryable(response)) {
+                return response;
+            }
+
+            response.close();
+            if (attempt == config.getMaxRetries()) {
+                throw new IOException("HTTP " + response.code() + " after "
+                        + (attempt + 1) + " attempts");
+            }
+            backOff(chain, attempt++);
+        }
+    }
+
+    /**
+     * Waits before a retry
+     *
+     * @param chain   the chain of the request
+     * @param attempt the number of the failed attempt, starting from zero
+     * @throws IOException if the request is cancelled while waiting
+     */
+    private void backOff(Chain chain, int attempt) throws IOException {
+        long backoffMillis = Math.min(config.getMaxBackoffMillis(),
+                config.getInitialBackoffMillis() << Math.min(attempt, 30));
+        long sleepMillis = (long) (random.nextDouble() * backoffMillis);
+
+        long wakeUpAt = System.currentTimeMillis() + sleepMillis;
+        long remaining = sleepMillis;
+        while (remaining > 0) {
+            if (chain.call().isCanceled()) {
+                throw new IOException("Canceled");
+            }
+            try {
+                Thread.sleep(Math.min(remaining, MAX_SLEEP_SLICE_MILLIS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting to retry", e);
+            }
+            remaining = wakeUpAt - System.currentTimeMillis();
+        }
+    }
+
+    private static boolean isIdempotent(Request request) {
+        return request.method().equals("GET") || request.method().equals("HEAD");
+    }
+
+    private static boolean isRetryable(Response response) {
+        // The 504 of the cache, for a request which only accepts cached responses, is final
+        if (response.networkResponse() == null) {
+            return false;
+        }
+        int code = response.code();
+        return (code == 502) || (code == 503) || (code == 504);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Coalesces concurrent executions of the same task.
+ * <p>
+ * The first caller for a key runs the task; every caller which asks for the same key while the
+ * task is still running waits for it and receives the same result (or the same exception).
+ * <p>
+ * Every caller can pass its own CancellationSignal. A cancelled caller stops waiting and gets an
+ * OperationCanceledException; the task itself is cancelled only when all its callers have been
+ * cancelled, through the CancellationSignal which is passed to the task.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, Flight<V>> flights = new HashMap<>();
+
+    /**
+     * Runs the task, or waits for the running task with the same key
+     *
+     * @param key    the key which identifies the task
+     * @param task   the task
+     * @param signal the signal to cancel the caller, may be null
+     * @return the result of the task
+     * @throws IOException if the task failed with an IOException
+     */
+    public V execute(K key, Task<V> task, CancellationSignal signal) throws IOException {
+        Flight<V> flight;
+        boolean isLeader = false;
+
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight<>();
+                flights.put(key, flight);
+                isLeader = true;
+            }
+            flight.join();
+        }
+
+        // When the caller is cancelled, it leaves the flight
+        final K joinedKey = key;
+        final Flight<V> joinedFlight = flight;
+        if (signal != null) {
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    leave(joinedKey, joinedFlight);
+                }
+            });
+        }
+
+        try {
+            if (isLeader) {
+                try {
+                    flight.complete(task.call(flight.signal), null);
+                } catch (IOException | RuntimeException e) {
+                    flight.complete(null, e);
+                } finally {
+                    synchronized (flights) {
+                        if (flights.get(key) == flight) {
+                            flights.remove(key);
+                        }
+                    }
+                }
+            }
+
+            return flight.await(signal);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+    }
+
+    /**
+     * Removes a cancelled caller from a flight. If it was the last one, the flight is forgotten,
+     * so that new callers start a new one, and its task is cancelled.
+     *
+     * @param key    the key of the flight
+     * @param flight the flight
+     */
+    private void leave(K key, Flight<V> flight) {
+        boolean cancelTask;
+        synchronized (flights) {
+            cancelTask = flight.leave();
+            if (cancelTask && (flights.get(key) == flight)) {
+                flights.remove(key);
+            }
+        }
+
+        // Cancel outside of the lock, as the cancel listeners run synchronously
+        if (cancelTask) {
+            flight.signal.cancel();
+        }
+    }
+
+    /**
+     * A task whose result can be shared between callers
+     *
+     * @param <V> the type of the result
+     */
+    public interface Task<V> {
+
+        /**
+         * Runs the task
+         *
+         * @param signal the signal which is cancelled when no caller waits for the result anymore
+         * @return the result
+         * @throws IOException if the task fails
+         */
+        V call(CancellationSignal signal) throws IOException;
+    }
+
+    /**
+     * A single execution of a task, with its result
+     */
+    private static class Flight<V> {
+        private final CancellationSignal signal = new CancellationSignal();
+        private int waiters = 0;
+        private boolean done = false;
+        private V result;
+        private Exception exception;
+
+        synchronized void join() {
+            waiters++;
+        }
+
+        /**
+         * Removes a caller
+         *
+         * @return true if no caller is left and the task is still running
+         */
+        synchronized boolean leave() {
+            waiters--;
+            // Wake up the waiting callers, so that the cancelled one can stop waiting
+            notifyAll();
+            return (waiters == 0) && !done;
+        }
+
+        synchronized void complete(V result, Exception exception) {
+            this.result = result;
+            this.exception = exception;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized V await(CancellationSignal callerSignal) throws IOException {
+            boolean interrupted = false;
+            while (!done && !isCanceled(callerSignal)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            // A cancelled caller doesn't care about the result
+            if (isCanceled(callerSignal)) {
+                throw new OperationCanceledException();
+            }
+
+            if (exception instanceof IOException) {
+                throw (IOException) exception;
+            } else if (exception instanceof RuntimeException) {
+                throw (RuntimeException) exception;
+            }
+            return result;
+        }
+
+        private static boolean isCanceled(CancellationSignal signal) {
+            return (signal != null) && signal.isCanceled();
+        }
+    }
+}
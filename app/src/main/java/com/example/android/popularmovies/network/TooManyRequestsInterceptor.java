@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.network;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * An application interceptor which retries a request answered with 429 Too Many Requests, once
+ * the RateLimitInterceptor has paused for the time given in the Retry-After header.
+ * <p>
+ * If the API keeps refusing the request, or asks to wait too long, the request fails with an
+ * IOException instead of returning the 429 response: so the OfflineCacheInterceptor can still
+ * serve a stale cached response, rather than showing no movies at all.
+ */
+public class TooManyRequestsInterceptor implements Interceptor {
+    private static final int MAX_RETRIES = 2;
+    // Retry only if the API asks to wait at most this long
+    private static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+
+        Response response = chain.proceed(request);
+        int retries = 0;
+        while (response.code() == RateLimitInterceptor.HTTP_TOO_MANY_REQUESTS) {
+            long retryAfterMillis = RateLimitInterceptor.getRetryAfterMillis(response);
+            response.close();
+
+            if ((retries == MAX_RETRIES) || (retryAfterMillis > MAX_RETRY_AFTER_MILLIS)) {
+                throw new IOException("Too many requests, retry after " + retryAfterMillis + " ms");
+            }
+            retries++;
+
+            // The RateLimitInterceptor holds the request until the pause is over
+            response = chain.proceed(request);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.paging;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.example.android.popularmovies.adapters.MovieAdapter;
+import com.example.android.popularmovies.data.objects.Movie;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Turns the pages of the API into a continuous list of movies.
+ * <p>
+ * The engine listens to the scrolling of the RecyclerView: when the user gets near the end of the
+ * loaded movies it asks for the next page, and when the user gets near the beginning it asks for
+ * the previous one. Loaded pages are appended (or prepended) to the MovieAdapter. Only a sliding
+ * window of pages is kept: when the window grows too big, the pages at the opposite end are dropped
+ * from the adapter, so that memory stays bounded however deep the user scrolls.
+ */
+public class PagingEngine extends RecyclerView.OnScrollListener {
+    // Maximum number of pages kept in the adapter
+    private static final int MAX_PAGES_IN_WINDOW = 5;
+    // How close (in items) to the end of the loaded movies the next page is requested
+    private static final int LOAD_THRESHOLD_ITEMS = 8;
+    private final LinearLayoutManager layoutManager;
+    private final MovieAdapter adapter;
+    private final Listener listener;
+    // Number of movies of each page in the window, from the first to the last page
+    private final LinkedList<Integer> pageSizes = new LinkedList<>();
+    // First page in the window, 0 if the window is empty
+    private int firstPage = 0;
+    private int totalPages = 0;
+    // Page being loaded, 0 if none
+    private int pendingPage = 0;
+    // Page of the first visible movie
+    private int visiblePage = 0;
+
+    /**
+     * The constructor
+     *
+     * @param layoutManager the LayoutManager of the RecyclerView
+     * @param adapter       the adapter of the RecyclerView
+     * @param listener      the listener which loads the requested pages
+     */
+    public PagingEngine(LinearLayoutManager layoutManager, MovieAdapter adapter,
+                        Listener listener) {
+        this.layoutManager = layoutManager;
+        this.adapter = adapter;
+        this.listener = listener;
+    }
+
+    /**
+     * Empties the window and starts again from a page
+     *
+     * @param page the page to start from
+     */
+    public void reset(int page) {
+        clear();
+        visiblePage = page;
+        requestPage(page);
+    }
+
+    /**
+     * Empties the window, without loading anything
+     */
+    public void clear() {
+        adapter.clear();
+        pageSizes.clear();
+        firstPage = 0;
+        totalPages = 0;
+        pendingPage = 0;
+        visiblePage = 0;
+    }
+
+    /**
+     * Adds a loaded page to the window. A page which is already in the window replaces the old
+     * one, and only the movies which have changed are updated in the adapter. A page which is not
+     * adjacent to the window is ignored, unless the window is empty.
+     *
+     * @param page       the page number
+     * @param movies     the movies of the page
+     * @param totalPages the total number of pages
+     */
+    public void onPageLoaded(int page, List<Movie> movies, int totalPages) {
+        addPage(page, movies, totalPages, false);
+    }
+
+    /**
+     * Adds a stale page to the window, while the actual one is still being loaded. The page stays
+     * pending, so no other page is requested until onPageLoaded (or onPageFailed) is called.
+     *
+     * @param page       the page number
+     * @param movies     the movies of the stale page
+     * @param totalPages the total number of pages
+     */
+    public void onStalePageLoaded(int page, List<Movie> movies, int totalPages) {
+        addPage(page, movies, totalPages, true);
+    }
+
+    /**
+     * Notifies that the stale page added with onStalePageLoaded is the actual one, so that other
+     * pages can be requested
+     *
+     * @param page the page number
+     */
+    public void onStalePageConfirmed(int page) {
+        if (page == pendingPage) {
+            pendingPage = 0;
+        }
+
+        // If the user is already at the end of the page, go on loading
+        loadNextPageIfNeeded();
+    }
+
+    private void addPage(int page, List<Movie> movies, int totalPages, boolean isStale) {
+        if ((page == pendingPage) && !isStale) {
+            pendingPage = 0;
+        }
+
+        if ((movies == null) || movies.isEmpty()) {
+            return;
+        }
+
+        this.totalPages = totalPages;
+
+        if (isEmpty()) {
+            // First page of the window
+            firstPage = page;
+            pageSizes.add(movies.size());
+            adapter.appendMovies(movies);
+        } else if (page == getLastPage() + 1) {
+            // Next page: append it and drop the first pages if needed
+            pageSizes.addLast(movies.size());
+            adapter.appendMovies(movies);
+            while (pageSizes.size() > MAX_PAGES_IN_WINDOW) {
+                adapter.removeMovies(0, pageSizes.removeFirst());
+                firstPage++;
+            }
+        } else if (page == firstPage - 1) {
+            // Previous page: prepend it and drop the last pages if needed
+            pageSizes.addFirst(movies.size());
+            adapter.prependMovies(movies);
+            firstPage--;
+            while (pageSizes.size() > MAX_PAGES_IN_WINDOW) {
+                int lastPageSize = pageSizes.removeLast();
+                adapter.removeMovies(adapter.getItemCount() - lastPageSize, lastPageSize);
+            }
+        } else if ((page >= firstPage) && (page <= getLastPage())) {
+            // Already in the window (e.g. a stale page which has been revalidated)
+            replacePage(page, movies);
+        } else {
+            // Not adjacent to the window
+            return;
+        }
+
+        updateVisiblePage();
+
+        // If the user is already at the end of the new page, go on loading
+        loadNextPageIfNeeded();
+    }
+
+    /**
+     * Replaces a page in the window, updating only the movies which have changed
+     *
+     * @param page   the page number
+     * @param movies the new movies of the page
+     */
+    private void replacePage(int page, List<Movie> movies) {
+        int index = page - firstPage;
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            start += pageSizes.get(i);
+        }
+
+        adapter.updateMovies(start, pageSizes.get(index), movies);
+        pageSizes.set(index, movies.size());
+    }
+
+    /**
+     * Notifies that a page could not be loaded, so that it can be requested again
+     *
+     * @param page the page number
+     */
+    public void onPageFailed(int page) {
+        if (page == pendingPage) {
+            pendingPage = 0;
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        super.onScrolled(recyclerView, dx, dy);
+
+        if (isEmpty()) {
+            return;
+        }
+
+        updateVisiblePage();
+
+        if (dy > 0) {
+            loadNextPageIfNeeded();
+        } else if (dy < 0) {
+            loadPreviousPageIfNeeded();
+        }
+    }
+
+    /**
+     * Requests the next page, if the user is near the end of the loaded movies
+     */
+    private void loadNextPageIfNeeded() {
+        int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+        if ((pendingPage == 0) && (getLastPage() < totalPages)
+                && (lastVisiblePosition != RecyclerView.NO_POSITION)
+                && (lastVisiblePosition >= adapter.getItemCount() - 1 - LOAD_THRESHOLD_ITEMS)) {
+            requestPage(getLastPage() + 1);
+        }
+    }
+
+    /**
+     * Requests the previous page, if the user is near the beginning of the loaded movies
+     */
+    private void loadPreviousPageIfNeeded() {
+        int firstVisiblePosition = layoutManager.findFirstVisibleItemPosition();
+        if ((pendingPage == 0) && (firstPage > 1)
+                && (firstVisiblePosition != RecyclerView.NO_POSITION)
+                && (firstVisiblePosition <= LOAD_THRESHOLD_ITEMS)) {
+            requestPage(firstPage - 1);
+        }
+    }
+
+    private void requestPage(int page) {
+        pendingPage = page;
+        listener.onPageRequested(page);
+    }
+
+    /**
+     * Finds the page of the first visible movie and notifies it if it has changed
+     */
+    private void updateVisiblePage() {
+        int position = layoutManager.findFirstVisibleItemPosition();
+        if (position == RecyclerView.NO_POSITION) {
+            position = 0;
+        }
+
+        int page = firstPage;
+        int pageStart = 0;
+        for (int pageSize : pageSizes) {
+            if (position < pageStart + pageSize) {
+                break;
+            }
+            pageStart += pageSize;
+            page++;
+        }
+        page = Math.min(page, getLastPage());
+
+        if (page != visiblePage) {
+            visiblePage = page;
+            listener.onVisiblePageChanged(page);
+        }
+    }
+
+    /**
+     * Checks if no page is loaded
+     *
+     * @return true if the window is empty
+     */
+    public boolean isEmpty() {
+        return firstPage == 0;
+    }
+
+    public int getFirstPage() {
+        return firstPage;
+    }
+
+    public int getLastPage() {
+        return (firstPage == 0) ? 0 : firstPage + pageSizes.size() - 1;
+    }
+
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    public int getVisiblePage() {
+        return visiblePage;
+    }
+
+    /**
+     * Saves the window, so that it can be restored after a configuration change
+     *
+     * @return the state of the engine
+     */
+    public State saveState() {
+        return new State(firstPage, totalPages, pendingPage, visiblePage,
+                new ArrayList<>(pageSizes), new ArrayList<>(adapter.getMovies()));
+    }
+
+    /**
+     * Restores a window saved with saveState()
+     *
+     * @param state the state of the engine
+     */
+    public void restoreState(State state) {
+        clear();
+        firstPage = state.firstPage;
+        totalPages = state.totalPages;
+        pendingPage = state.pendingPage;
+        visiblePage = state.visiblePage;
+        pageSizes.addAll(state.pageSizes);
+        adapter.appendMovies(state.movies);
+    }
+
+    /**
+     * The listener which loads the pages requested by the engine
+     */
+    public interface Listener {
+
+        /**
+         * Called when a page is needed. The listener must call onPageLoaded or onPageFailed
+         * when the page has been loaded.
+         *
+         * @param page the page number
+         */
+        void onPageRequested(int page);
+
+        /**
+         * Called when the page of the first visible movie changes
+         *
+         * @param page the page number
+         */
+        void onVisiblePageChanged(int page);
+    }
+
+    /**
+     * The state of the engine, kept across configuration changes
+     */
+    public static class State {
+        private final int firstPage;
+        private final int totalPages;
+        private final int pendingPage;
+        private final int visiblePage;
+        private final List<Integer> pageSizes;
+        private final List<Movie> movies;
+
+        State(int firstPage, int totalPages, int pendingPage, int visiblePage,
+              List<Integer> pageSizes, List<Movie> movies) {
+            this.firstPage = firstPage;
+            this.totalPages = totalPages;
+            this.pendingPage = pendingPage;
+            this.visiblePage = visiblePage;
+            this.pageSizes = pageSizes;
+            this.movies = movies;
+        }
+    }
+}
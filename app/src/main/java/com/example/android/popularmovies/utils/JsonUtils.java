@@ -22,56 +22,90 @@
 
 package com.example.android.popularmovies.utils;
 
-import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieDetailResponse;
 import com.example.android.popularmovies.data.objects.MovieResponse;
-import com.example.android.popularmovies.data.objects.Page;
 import com.example.android.popularmovies.data.objects.ReviewResponse;
 import com.example.android.popularmovies.data.objects.VideoResponse;
+import com.example.android.popularmovies.network.ResponseParser;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 
-import java.util.List;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 
 /**
- * Utilities to parse Json strings and mapping them to Java objects
+ * Utilities to parse Json strings (or streams) and mapping them to Java objects
  */
 public class JsonUtils {
 
+    // The Gson instance shared by all the parsers, with the TypeAdapters of the response types
+    private static final Gson GSON =
+            ResponseTypeAdapters.register(new GsonBuilder().serializeNulls()).create();
+
+    // Parsers used by NetworkUtils.loadFromHttpUrl. They are shared instances, so that identical
+    // requests in flight can be recognized and coalesced
+    public static final ResponseParser<MovieResponse> MOVIES_LIST_PARSER =
+            new ResponseParser<MovieResponse>() {
+                @Override
+                public MovieResponse parse(Reader json) throws IOException {
+                    return parseMoviesList(json);
+                }
+            };
+    public static final ResponseParser<MovieDetailResponse> MOVIE_DETAILS_PARSER =
+            new ResponseParser<MovieDetailResponse>() {
+                @Override
+                public MovieDetailResponse parse(Reader json) throws IOException {
+                    return parseMovieDetails(json);
+                }
+            };
+    public static final ResponseParser<ReviewResponse> REVIEWS_PARSER =
+            new ResponseParser<ReviewResponse>() {
+                @Override
+                public ReviewResponse parse(Reader json) throws IOException {
+                    return parseReviews(json);
+                }
+            };
+
     // Private constructor, which we use to avoid instantiating this class
     private JsonUtils() {
     }
 
     /**
-     * Parses a JSON String containing the movies list, and returns a List of Movie objects
+     * Parses a JSON String containing a page of a movies list (or of a search), and returns a
+     * MovieResponse object with the movies and the paging state of the query
      *
      * @param jsonString the JSON String containing the movies list
-     * @return a List of Movie objects
+     * @return a MovieResponse object, or null if there are no movies
      */
-    public static List<Movie> parseMoviesList(String jsonString, int queryType) {
-        List<Movie> movies;
-
-        // Parse the Json String with Gson
-        Gson gson = new GsonBuilder().serializeNulls().create();
-        MovieResponse movieResponse;
-
+    public static MovieResponse parseMoviesList(String jsonString) {
         try {
-            movieResponse = gson.fromJson(jsonString, MovieResponse.class);
-            movies = movieResponse.getMovies();
-        } catch (JsonParseException e) {
+            return parseMoviesList(new StringReader(jsonString));
+        } catch (IOException e) {
+            // A string can't fail to be read
             return null;
         }
+    }
 
-        // Set the total number of pages
-        if (queryType == NetworkUtils.QUERY_LIST) {
-            Page.setTotalPages(movieResponse.getTotalPages());
-        } else if (queryType == NetworkUtils.QUERY_SEARCH) {
-            Page.setSearchTotalPages(movieResponse.getTotalPages());
-        }
+    /**
+     * Parses a JSON stream containing a page of a movies list (or of a search), and returns a
+     * MovieResponse object with the movies and the paging state of the query
+     *
+     * @param reader the reader of the JSON stream containing the movies list
+     * @return a MovieResponse object, or null if there are no movies
+     * @throws IOException if the stream can't be read
+     */
+    public static MovieResponse parseMoviesList(Reader reader) throws IOException {
+        MovieResponse movieResponse = parse(reader, MovieResponse.class);
 
-        if (movies.size() > 0) {
-            // Return the List of Movie objects
-            return movies;
+        if ((movieResponse != null) && (movieResponse.getMovies() != null)
+                && (movieResponse.getMovies().size() > 0)) {
+            // Return the page
+            return movieResponse;
         } else {
             return null;
         }
@@ -84,14 +118,25 @@ public class JsonUtils {
      * @return a VideoResponse object
      */
     public static VideoResponse parseVideos(String jsonString) {
-        Gson gson = new GsonBuilder().serializeNulls().create();
         try {
-            return gson.fromJson(jsonString, VideoResponse.class);
-        } catch (JsonParseException e) {
+            return parseVideos(new StringReader(jsonString));
+        } catch (IOException e) {
+            // A string can't fail to be read
             return null;
         }
     }
 
+    /**
+     * Parse a json stream and return a VideoResponse object (containing a list of videos)
+     *
+     * @param reader the reader of the json stream
+     * @return a VideoResponse object
+     * @throws IOException if the stream can't be read
+     */
+    public static VideoResponse parseVideos(Reader reader) throws IOException {
+        return parse(reader, VideoResponse.class);
+    }
+
     /**
      * Parse a json string and return a ReviewResponse object (containing a list of reviews)
      *
@@ -99,10 +144,75 @@ public class JsonUtils {
      * @return a ReviewResponse object
      */
     public static ReviewResponse parseReviews(String jsonString) {
-        Gson gson = new GsonBuilder().serializeNulls().create();
         try {
-            return gson.fromJson(jsonString, ReviewResponse.class);
-        } catch (JsonParseException e) {
+            return parseReviews(new StringReader(jsonString));
+        } catch (IOException e) {
+            // A string can't fail to be read
+            return null;
+        }
+    }
+
+    /**
+     * Parse a json stream and return a ReviewResponse object (containing a list of reviews)
+     *
+     * @param reader the reader of the json stream
+     * @return a ReviewResponse object
+     * @throws IOException if the stream can't be read
+     */
+    public static ReviewResponse parseReviews(Reader reader) throws IOException {
+        return parse(reader, ReviewResponse.class);
+    }
+
+    /**
+     * Parse a json string and return a MovieDetailResponse object (containing the videos of a
+     * movie)
+     *
+     * @param jsonString the json string
+     * @return a MovieDetailResponse object
+     */
+    public static MovieDetailResponse parseMovieDetails(String jsonString) {
+        try {
+            return parseMovieDetails(new StringReader(jsonString));
+        } catch (IOException e) {
+            // A string can't fail to be read
+            return null;
+        }
+    }
+
+    /**
+     * Parse a json stream and return a MovieDetailResponse object (containing the videos of a
+     * movie)
+     *
+     * @param reader the reader of the json stream
+     * @return a MovieDetailResponse object
+     * @throws IOException if the stream can't be read
+     */
+    public static MovieDetailResponse parseMovieDetails(Reader reader) throws IOException {
+        return parse(reader, MovieDetailResponse.class);
+    }
+
+    /**
+     * Parse a json stream into an object. The stream is read token by token with a JsonReader, so
+     * the objects are built while the stream is read and the whole json is never held in memory.
+     *
+     * @param reader the reader of the json stream
+     * @param type   the class of the object
+     * @param <T>    the type of the object
+     * @return the object, or null if the json is not valid (or it ends too early)
+     * @throws IOException if the stream can't be read (e.g. the connection is reset)
+     */
+    private static <T> T parse(Reader reader, Class<T> type) throws IOException {
+        // The hand-written TypeAdapters in ResponseTypeAdapters read the stream, so parsing
+        // doesn't use reflection. They are called directly rather than through Gson.fromJson,
+        // which would turn the failures to read the stream into a JsonSyntaxException
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        try {
+            return GSON.getAdapter(type).read(jsonReader);
+        } catch (MalformedJsonException | EOFException | IllegalStateException
+                | JsonParseException e) {
+            // Only invalid json is a parse failure: the failures to read the stream reach the
+            // caller, so that it can retry, fall back to the cache or report a cancellation
             return null;
         }
     }
@@ -22,14 +22,47 @@
 
 package com.example.android.popularmovies.utils;
 
+import android.content.Context;
 import android.net.Uri;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 
 import com.example.android.popularmovies.BuildConfig;
+import com.example.android.popularmovies.network.CachePolicy;
+import com.example.android.popularmovies.network.CircuitBreaker;
+import com.example.android.popularmovies.network.CircuitBreakerInterceptor;
+import com.example.android.popularmovies.network.HttpCacheConfig;
+import com.example.android.popularmovies.network.OfflineCacheInterceptor;
+import com.example.android.popularmovies.network.ParsedResponseCache;
+import com.example.android.popularmovies.network.PriorityTag;
+import com.example.android.popularmovies.network.RateLimitInterceptor;
+import com.example.android.popularmovies.network.RateLimiter;
+import com.example.android.popularmovies.network.RequestPriority;
+import com.example.android.popularmovies.network.RequestScheduler;
+import com.example.android.popularmovies.network.ResponseCacheInterceptor;
+import com.example.android.popularmovies.network.ResponseParser;
+import com.example.android.popularmovies.network.RetryConfig;
+import com.example.android.popularmovies.network.RetryInterceptor;
+import com.example.android.popularmovies.network.SingleFlight;
+import com.example.android.popularmovies.network.TooManyRequestsInterceptor;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -60,15 +93,122 @@ public class NetworkUtils {
     private static final String API_QUERY = "query";
     private static final String API_VIDEOS = "videos";
     private static final String API_REVIEWS = "reviews";
+    private static final String API_APPEND_TO_RESPONSE = "append_to_response";
     private static final String API_LANGUAGE = "language";
     private static final String API_LANGUAGE_EN = "en-US";
-    // OkHttpClient
-    private static final OkHttpClient client = new OkHttpClient();
+    // Name of the directory of the HTTP response cache
+    private static final String HTTP_CACHE_DIRECTORY = "http_cache";
+    // Number of parsed responses kept for reuse
+    private static final int PARSED_RESPONSES_CACHE_SIZE = 64;
+    // Cache control of the requests which must be revalidated with the API, even if fresh
+    private static final CacheControl CACHE_CONTROL_REVALIDATE =
+            new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+    // OkHttpClient. Until init() is called, a client without cache is used
+    private static volatile OkHttpClient client = new OkHttpClient();
+    // Base url of the API. It can be replaced, e.g. to point to a local mock server in tests
+    private static volatile String apiBaseUrl = API_BASE_URL;
+    // Decides when each request starts, according to its priority
+    private static final RequestScheduler scheduler = RequestScheduler.defaultScheduler();
+    // Requests in flight, so that identical concurrent requests share one call and one result
+    private static final SingleFlight<FlightKey, Object> inFlightRequests = new SingleFlight<>();
+    // Priorities of the requests in flight, so that a user-visible caller joining a prefetch
+    // raises its priority
+    private static final ConcurrentMap<FlightKey, PriorityTag> inFlightPriorities =
+            new ConcurrentHashMap<>();
+    // Objects parsed from the latest responses, reused when a response hasn't changed
+    private static final ParsedResponseCache parsedResponses =
+            new ParsedResponseCache(PARSED_RESPONSES_CACHE_SIZE);
 
     // Private constructor, which we use to avoid instantiating this class
     private NetworkUtils() {
     }
 
+    /**
+     * Initializes the OkHttpClient with an on-disk response cache and a rate limiter, which keeps
+     * the requests within the rate limit of the API, and with the default retry policy.
+     * This should be called once, when the application is created.
+     *
+     * @param context the context, used to get the cache directory
+     * @param config  the configuration of the cache
+     */
+    public static void init(Context context, HttpCacheConfig config) {
+        init(context, config, RetryConfig.defaultConfig());
+    }
+
+    /**
+     * Initializes the OkHttpClient with an on-disk response cache, a rate limiter, which keeps
+     * the requests within the rate limit of the API, retries with backoff and a circuit breaker.
+     * This should be called once, when the application is created.
+     *
+     * @param context     the context, used to get the cache directory
+     * @param config      the configuration of the cache
+     * @param retryConfig the configuration of the retries and of the circuit breaker
+     */
+    public static void init(Context context, HttpCacheConfig config, RetryConfig retryConfig) {
+        File cacheDirectory = new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY);
+        Cache cache = new Cache(cacheDirectory, config.getCacheSizeBytes());
+        CircuitBreaker circuitBreaker = new CircuitBreaker(retryConfig.getFailureThreshold(),
+                retryConfig.getOpenMillis());
+
+        client = new OkHttpClient.Builder()
+                .cache(cache)
+                // When everything else fails, serve a stale response from the cache
+                .addInterceptor(new OfflineCacheInterceptor(config))
+                .addInterceptor(new TooManyRequestsInterceptor())
+                .addInterceptor(new RetryInterceptor(retryConfig))
+                // Every attempt goes through the circuit breaker, which also sees the failures
+                // to connect
+                .addInterceptor(new CircuitBreakerInterceptor(circuitBreaker))
+                // Only requests which reach the network take a token of the rate limiter
+                .addNetworkInterceptor(new RateLimitInterceptor(RateLimiter.defaultLimiter()))
+                .addNetworkInterceptor(new ResponseCacheInterceptor(config))
+                .build();
+    }
+
+    /**
+     * Replaces the base url of the API, e.g. with the url of a local mock server.
+     * Urls built afterwards point to the new base url.
+     *
+     * @param baseUrl the new base url (ending with a slash), or null to restore the default one
+     */
+    @VisibleForTesting
+    public static void setApiBaseUrl(@Nullable String baseUrl) {
+        apiBaseUrl = (baseUrl != null) ? baseUrl : API_BASE_URL;
+    }
+
+    /**
+     * Removes all the responses from the HTTP cache, if there is one, so that the next requests
+     * go to the network
+     *
+     * @throws IOException if the cache can't be cleared
+     */
+    @VisibleForTesting
+    public static void clearHttpCache() throws IOException {
+        Cache cache = client.cache();
+        if (cache != null) {
+            cache.evictAll();
+        }
+    }
+
+    /**
+     * Gets the scheduler of the requests to the API, so that other network work (e.g. prefetching
+     * images) can share its priority classes
+     *
+     * @return the RequestScheduler
+     */
+    public static RequestScheduler getRequestScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Gets the language in which the data is requested to the API
+     *
+     * @return the language
+     */
+    public static String getLanguage() {
+        return API_LANGUAGE_EN;
+    }
+
     /**
      * Builds the complete url to an image.
      *
@@ -129,7 +269,7 @@ public class NetworkUtils {
         switch (type) {
             case NetworkUtils.QUERY_LIST:
                 // Build the Uri
-                uri = Uri.parse(API_BASE_URL).buildUpon()
+                uri = Uri.parse(apiBaseUrl).buildUpon()
                         .appendPath(API_MOVIE)
                         .appendPath(sortBy)
                         .appendQueryParameter(API_PAGE, String.valueOf(page))
@@ -139,7 +279,7 @@ public class NetworkUtils {
                 break;
             case NetworkUtils.QUERY_SEARCH:
                 // Build the Uri
-                uri = Uri.parse(API_BASE_URL).buildUpon()
+                uri = Uri.parse(apiBaseUrl).buildUpon()
                         .appendPath(API_SEARCH)
                         .appendPath(API_MOVIE)
                         .appendQueryParameter(API_PAGE, String.valueOf(page))
@@ -167,19 +307,19 @@ public class NetworkUtils {
     }
 
     /**
-     * Gets the url which will be used to retrieve the videos
-     * API endpoint: /movie/{id}/videos/
+     * Gets the url which will be used to retrieve the reviews
+     * API endpoint: /movie/{id}/reviews/
      *
      * @param movieId the movie id
      * @return the URL to retrieve the reviews
      */
-    public static URL getVideosUrl(int movieId) {
+    public static URL getReviewsUrl(int movieId) {
         Uri uri;
         // Build the uri
-        uri = Uri.parse(API_BASE_URL).buildUpon()
+        uri = Uri.parse(apiBaseUrl).buildUpon()
                 .appendPath(API_MOVIE)
                 .appendPath(String.valueOf(movieId))
-                .appendPath(API_VIDEOS)
+                .appendPath(API_REVIEWS)
                 .appendQueryParameter(API_LANGUAGE, API_LANGUAGE_EN)
                 .appendQueryParameter(API_KEY_QUERY, API_KEY)
                 .build();
@@ -198,19 +338,20 @@ public class NetworkUtils {
     }
 
     /**
-     * Gets the url which will be used to retrieve the reviews
-     * API endpoint: /movie/{id}/reviews/
+     * Gets the url which will be used to retrieve the details of a movie, together with its
+     * videos, in a single request
+     * API endpoint: /movie/{id}?append_to_response=videos
      *
      * @param movieId the movie id
-     * @return the URL to retrieve the reviews
+     * @return the URL to retrieve the details
      */
-    public static URL getReviewsUrl(int movieId) {
+    public static URL getMovieDetailsUrl(int movieId) {
         Uri uri;
         // Build the uri
-        uri = Uri.parse(API_BASE_URL).buildUpon()
+        uri = Uri.parse(apiBaseUrl).buildUpon()
                 .appendPath(API_MOVIE)
                 .appendPath(String.valueOf(movieId))
-                .appendPath(API_REVIEWS)
+                .appendQueryParameter(API_APPEND_TO_RESPONSE, API_VIDEOS)
                 .appendQueryParameter(API_LANGUAGE, API_LANGUAGE_EN)
                 .appendQueryParameter(API_KEY_QUERY, API_KEY)
                 .build();
@@ -229,24 +370,284 @@ public class NetworkUtils {
     }
 
     /**
-     * Returns the entire result from the HTTP response using OkHttp
+     * Fetches the HTTP response and parses it, as a user-visible request.
      *
-     * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response.
+     * @param url    the URL to fetch the HTTP response from
+     * @param parser the parser for the body of the response
+     * @param signal the signal to cancel the request, may be null
+     * @param <T>    the type of the parsed result
+     * @return the parsed result, or null if the response was not successful
      * @throws IOException Related to network and stream reading
+     * @see #loadFromHttpUrl(URL, ResponseParser, CancellationSignal, RequestPriority, CachePolicy)
      */
-    public static String getResponseFromHttpUrl(URL url) throws IOException {
-        Request request = new Request.Builder()
-                .url(url.toString())
-                .build();
+    public static <T> T loadFromHttpUrl(URL url, ResponseParser<T> parser,
+                                        @Nullable CancellationSignal signal) throws IOException {
+        return loadFromHttpUrl(url, parser, signal, RequestPriority.VISIBLE, CachePolicy.DEFAULT);
+    }
+
+    /**
+     * Fetches the HTTP response and parses it, serving it from the HTTP cache if it is fresh.
+     *
+     * @param url      the URL to fetch the HTTP response from
+     * @param parser   the parser for the body of the response
+     * @param signal   the signal to cancel the request, may be null
+     * @param priority the priority of the request, within the rate limit
+     * @param <T>      the type of the parsed result
+     * @return the parsed result, or null if the response was not successful
+     * @throws IOException Related to network and stream reading
+     * @see #loadFromHttpUrl(URL, ResponseParser, CancellationSignal, RequestPriority, CachePolicy)
+     */
+    public static <T> T loadFromHttpUrl(URL url, ResponseParser<T> parser,
+                                        @Nullable CancellationSignal signal,
+                                        RequestPriority priority) throws IOException {
+        return loadFromHttpUrl(url, parser, signal, priority, CachePolicy.DEFAULT);
+    }
 
-        Response response = client.newCall(request).execute();
+    /**
+     * Fetches the HTTP response and parses it. If an identical request (same url, once its query
+     * parameters are sorted, and same parser) is already in flight, no new request is made: the
+     * caller waits for the running one and gets the same parsed result. If the caller has a
+     * higher priority than the running request, the request gets its priority.
+     *
+     * The body is never buffered into a String: the parser reads it while it is downloaded.
+     * If the response has the same validator (ETag or Last-Modified) as the last one parsed for
+     * the same request, e.g. because it comes from the cache or the API answered 304 Not Modified,
+     * the body is not parsed again and the previously parsed object is returned.
+     *
+     * The CachePolicy decides whether a cached response can be used as it is, must be revalidated
+     * with the API (e.g. for pull-to-refresh) or is the only response wanted (e.g. to show stale
+     * data right away, while the actual data is loaded).
+     *
+     * The request is cancelled once every caller waiting for it has cancelled its signal; a
+     * cancelled caller gets an OperationCanceledException.
+     *
+     * @param url         the URL to fetch the HTTP response from
+     * @param parser      the parser for the body of the response
+     * @param signal      the signal to cancel the request, may be null
+     * @param priority    the priority of the request, within the rate limit
+     * @param cachePolicy how the HTTP response cache is used
+     * @param <T>         the type of the parsed result
+     * @return the parsed result, or null if the response was not successful (or not cached, with
+     * CachePolicy.CACHE_ONLY)
+     * @throws IOException Related to network and stream reading
+     */
+    public static <T> T loadFromHttpUrl(final URL url, final ResponseParser<T> parser,
+                                        @Nullable CancellationSignal signal,
+                                        RequestPriority priority, final CachePolicy cachePolicy)
+            throws IOException {
+        String canonicalUrl = getCanonicalUrl(url);
+        FlightKey key = new FlightKey(canonicalUrl, parser, cachePolicy);
+        // Whatever the cache policy, the body of the response is the same
+        final FlightKey parsedKey = new FlightKey(canonicalUrl, parser, CachePolicy.DEFAULT);
 
-        ResponseBody body = response.body();
-        if ((body != null) && (response.isSuccessful())) {
-            return body.string();
+        // Share the priority with the identical request in flight, if any
+        PriorityTag ownTag = new PriorityTag(priority);
+        PriorityTag flightTag = inFlightPriorities.putIfAbsent(key, ownTag);
+        if (flightTag != null) {
+            flightTag.raiseTo(priority);
         } else {
-            return null;
+            flightTag = ownTag;
+        }
+        final PriorityTag tag = flightTag;
+
+        try {
+            Object result = inFlightRequests.execute(key, new SingleFlight.Task<Object>() {
+                @Override
+                public Object call(CancellationSignal flightSignal) throws IOException {
+                    return readFromHttpUrl(url, flightSignal, tag, cachePolicy,
+                            new BodyReader<Object>() {
+                                @Override
+                                public Object read(Response response, ResponseBody body)
+                                        throws IOException {
+                                    // An unchanged response is not parsed again
+                                    Object parsed = parsedResponses.get(parsedKey, response);
+                                    if (parsed == null) {
+                                        parsed = parser.parse(body.charStream());
+                                        if (parsed != null) {
+                                            parsedResponses.put(parsedKey, response, parsed);
+                                        }
+                                    }
+                                    return parsed;
+                                }
+                            });
+                }
+            }, signal);
+
+            // The key contains the parser, so the result is always of the parser's type
+            @SuppressWarnings("unchecked")
+            T parsedResult = (T) result;
+            return parsedResult;
+        } finally {
+            inFlightPriorities.remove(key, ownTag);
+        }
+    }
+
+    /**
+     * Makes the HTTP request using OkHttp and reads the body of a successful response. The request
+     * starts when the RequestScheduler allows it, and it may be preempted by user-visible requests
+     * if it has a lower priority. The call is cancelled as soon as the CancellationSignal is
+     * cancelled, even while the body is being read.
+     *
+     * @param url         the URL to fetch the HTTP response from
+     * @param signal      the signal to cancel the call, may be null
+     * @param tag         the priority of the request
+     * @param cachePolicy how the HTTP response cache is used
+     * @param bodyReader  the reader of the body
+     * @param <T>         the type of the result
+     * @return the result of the reader, or null if the response was not successful
+     * @throws IOException Related to network and stream reading
+     */
+    private static <T> T readFromHttpUrl(URL url, @Nullable CancellationSignal signal,
+                                         PriorityTag tag, CachePolicy cachePolicy,
+                                         BodyReader<T> bodyReader) throws IOException {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url.toString())
+                .tag(tag);
+        switch (cachePolicy) {
+            case REVALIDATE:
+                // The cached response is too old: OkHttp sends a conditional GET with its
+                // validators
+                requestBuilder.cacheControl(CACHE_CONTROL_REVALIDATE);
+                break;
+            case CACHE_ONLY:
+                // OkHttp answers 504 if there is no cached response
+                requestBuilder.cacheControl(CacheControl.FORCE_CACHE);
+                break;
+            case DEFAULT:
+            default:
+                break;
+        }
+        Request request = requestBuilder.build();
+
+        final Call call = client.newCall(request);
+        if (signal != null) {
+            // If the signal has already been cancelled, the call gets cancelled right away
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    call.cancel();
+                }
+            });
+        }
+
+        RequestScheduler.Ticket ticket = null;
+        try {
+            // Wait for the turn of the request, according to its priority
+            ticket = scheduler.acquire(tag, new RequestScheduler.Cancellable() {
+                @Override
+                public boolean isCanceled() {
+                    return call.isCanceled();
+                }
+
+                @Override
+                public void cancel() {
+                    call.cancel();
+                }
+            });
+
+            Response response = call.execute();
+
+            ResponseBody body = response.body();
+            if ((body == null) || (!response.isSuccessful())) {
+                // Release the connection (and the cache entry, if any)
+                response.close();
+                return null;
+            }
+
+            try {
+                T result = bodyReader.read(response, body);
+                // A read cut short by the cancellation may look like invalid json to the parser:
+                // report it as a cancellation instead of a null result
+                if (call.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                return result;
+            } finally {
+                body.close();
+            }
+        } catch (IOException e) {
+            // A cancelled call fails with an IOException: report it as a cancellation
+            if (call.isCanceled()) {
+                throw new OperationCanceledException();
+            }
+            throw e;
+        } finally {
+            if (ticket != null) {
+                ticket.release();
+            }
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+    }
+
+    /**
+     * Gets the url with its query parameters sorted by name, so that the same request always
+     * has the same representation
+     *
+     * @param url the url
+     * @return the canonical form of the url
+     */
+    private static String getCanonicalUrl(URL url) {
+        HttpUrl httpUrl = HttpUrl.get(url);
+        if (httpUrl == null) {
+            return url.toString();
+        }
+
+        List<String> names = new ArrayList<>(httpUrl.queryParameterNames());
+        Collections.sort(names);
+
+        HttpUrl.Builder builder = httpUrl.newBuilder().query(null);
+        for (String name : names) {
+            for (String value : httpUrl.queryParameterValues(name)) {
+                builder.addQueryParameter(name, value);
+            }
+        }
+
+        return builder.build().toString();
+    }
+
+    /**
+     * Reads the body of a successful response
+     *
+     * @param <T> the type of the result
+     */
+    private interface BodyReader<T> {
+        T read(Response response, ResponseBody body) throws IOException;
+    }
+
+    /**
+     * Identifies a request in flight: the canonical url, the parser of the response and the cache
+     * policy of the request
+     */
+    private static class FlightKey {
+        private final String canonicalUrl;
+        private final ResponseParser<?> parser;
+        private final CachePolicy cachePolicy;
+
+        FlightKey(String canonicalUrl, ResponseParser<?> parser, CachePolicy cachePolicy) {
+            this.canonicalUrl = canonicalUrl;
+            this.parser = parser;
+            this.cachePolicy = cachePolicy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FlightKey)) {
+                return false;
+            }
+            FlightKey other = (FlightKey) o;
+            return canonicalUrl.equals(other.canonicalUrl) && parser == other.parser
+                    && cachePolicy == other.cachePolicy;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 * canonicalUrl.hashCode() + System.identityHashCode(parser);
+            return 31 * result + cachePolicy.hashCode();
         }
     }
 }
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.utils;
+
+import com.example.android.popularmovies.data.objects.Movie;
+import com.example.android.popularmovies.data.objects.MovieDetailResponse;
+import com.example.android.popularmovies.data.objects.MovieResponse;
+import com.example.android.popularmovies.data.objects.Review;
+import com.example.android.popularmovies.data.objects.ReviewResponse;
+import com.example.android.popularmovies.data.objects.Video;
+import com.example.android.popularmovies.data.objects.VideoResponse;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written Gson TypeAdapters for the objects returned by the API. They read the Json stream
+ * field by field, so Gson never has to inspect the classes through reflection.
+ * Unknown fields are skipped, missing fields get their default value.
+ * <p>
+ * The objects are written back with the same field names, from their getters.
+ */
+final class ResponseTypeAdapters {
+
+    private static final TypeAdapter<Movie> MOVIE_ADAPTER = new ObjectTypeAdapter<Movie>() {
+        @Override
+        Movie readObject(JsonReader in) throws IOException {
+            int movieId = 0;
+            String originalTitle = "";
+            String title = "";
+            String posterImageUrl = null;
+            String backdropImageUrl = null;
+            String overview = null;
+            double userRating = 0;
+            String releaseDate = null;
+            VideoResponse videos = null;
+            ReviewResponse reviews = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        movieId = readInt(in);
+                        break;
+                    case "original_title":
+                        originalTitle = readString(in, "");
+                        break;
+                    case "title":
+                        title = readString(in, "");
+                        break;
+                    case "poster_path":
+                        posterImageUrl = readString(in, null);
+                        break;
+                    case "backdrop_path":
+                        backdropImageUrl = readString(in, null);
+                        break;
+                    case "overview":
+                        overview = readString(in, null);
+                        break;
+                    case "vote_average":
+                        userRating = readDouble(in);
+                        break;
+                    case "release_date":
+                        releaseDate = readString(in, null);
+                        break;
+                    case "videos":
+                        videos = VIDEO_RESPONSE_ADAPTER.read(in);
+                        break;
+                    case "reviews":
+                        reviews = REVIEW_RESPONSE_ADAPTER.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            Movie movie = new Movie(movieId, originalTitle, title, posterImageUrl,
+                    backdropImageUrl, overview, userRating, releaseDate);
+            movie.setVideos(videos);
+            movie.setReviews(reviews);
+            return movie;
+        }
+
+        @Override
+        void writeObject(JsonWriter out, Movie movie) throws IOException {
+            out.beginObject();
+            out.name("id").value(movie.getMovieId());
+            out.name("original_title").value(movie.getOriginalTitle());
+            out.name("title").value(movie.getTitle());
+            out.name("poster_path").value(movie.getPosterImageUrl());
+            out.name("backdrop_path").value(movie.getBackdropImageUrl());
+            out.name("overview").value(movie.getOverview());
+            out.name("vote_average").value(movie.getUserRating());
+            out.name("release_date").value(movie.getReleaseDate());
+            // The paging state of the reviews is not kept by the movie
+            if (movie.isVideosLoaded()) {
+                out.name("videos");
+                writeResults(out, movie.getVideos(), VIDEO_ADAPTER);
+            }
+            if (movie.isReviewsLoaded()) {
+                out.name("reviews");
+                writeResults(out, movie.getReviews(), REVIEW_ADAPTER);
+            }
+            out.endObject();
+        }
+    };
+
+    private static final TypeAdapter<Video> VIDEO_ADAPTER = new ObjectTypeAdapter<Video>() {
+        @Override
+        Video readObject(JsonReader in) throws IOException {
+            String id = null;
+            String key = null;
+            String name = null;
+            String site = null;
+            String type = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = readString(in, null);
+                        break;
+                    case "key":
+                        key = readString(in, null);
+                        break;
+                    case "name":
+                        name = readString(in, null);
+                        break;
+                    case "site":
+                        site = readString(in, null);
+                        break;
+                    case "type":
+                        type = readString(in, null);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return new Video(id, key, name, site, type);
+        }
+
+        @Override
+        void writeObject(JsonWriter out, Video video) throws IOException {
+            out.beginObject();
+            out.name("id").value(video.getId());
+            out.name("key").value(video.getKey());
+            out.name("name").value(video.getName());
+            out.name("site").value(video.getSite());
+            out.name("type").value(video.getType());
+            out.endObject();
+        }
+    };
+
+    private static final TypeAdapter<Review> REVIEW_ADAPTER = new ObjectTypeAdapter<Review>() {
+        @Override
+        Review readObject(JsonReader in) throws IOException {
+            String id = null;
+            String author = null;
+            String content = null;
+            String url = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = readString(in, null);
+                        break;
+                    case "author":
+                        author = readString(in, null);
+                        break;
+                    case "content":
+                        content = readString(in, null);
+                        break;
+                    case "url":
+                        url = readString(in, null);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return new Review(id, author, content, url);
+        }
+
+        @Override
+        void writeObject(JsonWriter out, Review review) throws IOException {
+            out.beginObject();
+            out.name("id").value(review.getId());
+            out.name("author").value(review.getAuthor());
+            out.name("content").value(review.getContent());
+            out.name("url").value(review.getUrl());
+            out.endObject();
+        }
+    };
+
+    private static final TypeAdapter<MovieResponse> MOVIE_RESPONSE_ADAPTER =
+            new ObjectTypeAdapter<MovieResponse>() {
+                @Override
+                MovieResponse readObject(JsonReader in) throws IOException {
+                    int page = 0;
+                    int totalPages = 0;
+                    List<Movie> movies = null;
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "page":
+                                page = readInt(in);
+                                break;
+                            case "total_pages":
+                                totalPages = readInt(in);
+                                break;
+                            case "results":
+                                movies = readList(in, MOVIE_ADAPTER);
+                                break;
+                            default:
+                                in.skipValue();
+                                break;
+                        }
+                    }
+                    in.endObject();
+
+                    return new MovieResponse(page, totalPages, movies);
+                }
+
+                @Override
+                void writeObject(JsonWriter out, MovieResponse response) throws IOException {
+                    out.beginObject();
+                    out.name("page").value(response.getPage());
+                    out.name("total_pages").value(response.getTotalPages());
+                    out.name("results");
+                    writeList(out, response.getMovies(), MOVIE_ADAPTER);
+                    out.endObject();
+                }
+            };
+
+    private static final TypeAdapter<VideoResponse> VIDEO_RESPONSE_ADAPTER =
+            new ObjectTypeAdapter<VideoResponse>() {
+                @Override
+                VideoResponse readObject(JsonReader in) throws IOException {
+                    List<Video> results = null;
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if (in.nextName().equals("results")) {
+                            results = readList(in, VIDEO_ADAPTER);
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+
+                    return new VideoResponse(results);
+                }
+
+                @Override
+                void writeObject(JsonWriter out, VideoResponse response) throws IOException {
+                    writeResults(out, response.getVideos(), VIDEO_ADAPTER);
+                }
+            };
+
+    private static final TypeAdapter<ReviewResponse> REVIEW_RESPONSE_ADAPTER =
+            new ObjectTypeAdapter<ReviewResponse>() {
+                @Override
+                ReviewResponse readObject(JsonReader in) throws IOException {
+                    int page = 0;
+                    int totalPages = 0;
+                    List<Review> results = null;
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "page":
+                                page = readInt(in);
+                                break;
+                            case "total_pages":
+                                totalPages = readInt(in);
+                                break;
+                            case "results":
+                                results = readList(in, REVIEW_ADAPTER);
+                                break;
+                            default:
+                                in.skipValue();
+                                break;
+                        }
+                    }
+                    in.endObject();
+
+                    return new ReviewResponse(page, totalPages, results);
+                }
+
+                @Override
+                void writeObject(JsonWriter out, ReviewResponse response) throws IOException {
+                    out.beginObject();
+                    out.name("page").value(response.getPage());
+                    out.name("total_pages").value(response.getTotalPages());
+                    out.name("results");
+                    writeList(out, response.getReviews(), REVIEW_ADAPTER);
+                    out.endObject();
+                }
+            };
+
+    private static final TypeAdapter<MovieDetailResponse> MOVIE_DETAIL_RESPONSE_ADAPTER =
+            new ObjectTypeAdapter<MovieDetailResponse>() {
+                @Override
+                MovieDetailResponse readObject(JsonReader in) throws IOException {
+                    int movieId = 0;
+                    VideoResponse videos = null;
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "id":
+                                movieId = readInt(in);
+                                break;
+                            case "videos":
+                                videos = VIDEO_RESPONSE_ADAPTER.read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                                break;
+                        }
+                    }
+                    in.endObject();
+
+                    return new MovieDetailResponse(movieId, videos);
+                }
+
+                @Override
+                void writeObject(JsonWriter out, MovieDetailResponse response)
+                        throws IOException {
+                    out.beginObject();
+                    out.name("id").value(response.getMovieId());
+                    out.name("videos");
+                    VIDEO_RESPONSE_ADAPTER.write(out, response.getVideos());
+                    out.endObject();
+                }
+            };
+
+    // Private constructor, which we use to avoid instantiating this class
+    private ResponseTypeAdapters() {
+    }
+
+    /**
+     * Registers the adapters of all the response types on a GsonBuilder
+     *
+     * @param builder the GsonBuilder
+     * @return the same builder, to chain other calls
+     */
+    static GsonBuilder register(GsonBuilder builder) {
+        return builder
+                .registerTypeAdapter(Movie.class, MOVIE_ADAPTER)
+                .registerTypeAdapter(Video.class, VIDEO_ADAPTER)
+                .registerTypeAdapter(Review.class, REVIEW_ADAPTER)
+                .registerTypeAdapter(MovieResponse.class, MOVIE_RESPONSE_ADAPTER)
+                .registerTypeAdapter(VideoResponse.class, VIDEO_RESPONSE_ADAPTER)
+                .registerTypeAdapter(ReviewResponse.class, REVIEW_RESPONSE_ADAPTER)
+                .registerTypeAdapter(MovieDetailResponse.class, MOVIE_DETAIL_RESPONSE_ADAPTER);
+    }
+
+    /**
+     * Reads a Json array with an adapter for its elements
+     *
+     * @return the list of elements, or null if the value is null
+     */
+    private static <T> List<T> readList(JsonReader in, TypeAdapter<T> elementAdapter)
+            throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<T> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(elementAdapter.read(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    /**
+     * Writes a list as a Json array, with an adapter for its elements
+     */
+    private static <T> void writeList(JsonWriter out, List<T> list, TypeAdapter<T> elementAdapter)
+            throws IOException {
+        if (list == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for (T element : list) {
+            elementAdapter.write(out, element);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writes a list as the results of a Json object, like the videos of the API
+     */
+    private static <T> void writeResults(JsonWriter out, List<T> list,
+                                         TypeAdapter<T> elementAdapter) throws IOException {
+        out.beginObject();
+        out.name("results");
+        writeList(out, list, elementAdapter);
+        out.endObject();
+    }
+
+    private static String readString(JsonReader in, String defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        return in.nextString();
+    }
+
+    private static int readInt(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static double readDouble(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        try {
+            return in.nextDouble();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * A TypeAdapter of Json objects, which also handles the null values
+     *
+     * @param <T> the type of the object
+     */
+    private abstract static class ObjectTypeAdapter<T> extends TypeAdapter<T> {
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return readObject(in);
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            writeObject(out, value);
+        }
+
+        abstract T readObject(JsonReader in) throws IOException;
+
+        abstract void writeObject(JsonWriter out, T value) throws IOException;
+    }
+}
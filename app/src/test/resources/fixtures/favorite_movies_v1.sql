@@ -0,0 +1,4 @@
+CREATE TABLE favorites (_id INTEGER PRIMARY KEY, original_title TEXT, title TEXT, poster_path TEXT, backdrop_path TEXT, overview TEXT, vote_average FLOAT, release_date TEXT);
+INSERT INTO favorites VALUES (550, 'Fight Club', 'Fight Club', '/adw6Lq9FiC9zjYEpOqfq03ituwp.jpg', '/87hTDiay2N2qWyX4Ds7ybXi9h8I.jpg', 'A ticking-time-bomb insomniac and a slippery soap salesman channel primal male aggression into a shocking new form of therapy.', 8.4, '1999');
+INSERT INTO favorites VALUES (680, 'Pulp Fiction', 'Pulp Fiction', '/d5iIlFn5s0ImszYzBPb8JPIfbXD.jpg', '/suaEOtk1N1sgg2MTM7oZd2cfVp3.jpg', 'A burger-loving hit man, his philosophical partner and a washed-up boxer converge in this sprawling crime caper.', 8.5, '1994');
+INSERT INTO favorites VALUES (129, '千と千尋の神隠し', 'Spirited Away', '/39wmItIWsg5sZMyRUHLkWBcuVCM.jpg', '/Ab8mkHmkYADjU7wQiOkia9BzGvS.jpg', 'A young girl, Chihiro, becomes trapped in a strange new world of spirits.', 8.5, '2001');
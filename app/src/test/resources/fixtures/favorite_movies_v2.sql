@@ -0,0 +1,10 @@
+CREATE TABLE favorites (_id INTEGER PRIMARY KEY, original_title TEXT, title TEXT, poster_path TEXT, backdrop_path TEXT, overview TEXT, vote_average FLOAT, release_date TEXT, details_saved_at INTEGER);
+CREATE TABLE favorite_videos (_id INTEGER PRIMARY KEY AUTOINCREMENT, movie_id INTEGER NOT NULL REFERENCES favorites(_id) ON DELETE CASCADE, position INTEGER NOT NULL, video_id TEXT, video_key TEXT, name TEXT, site TEXT, type TEXT);
+CREATE TABLE favorite_reviews (_id INTEGER PRIMARY KEY AUTOINCREMENT, movie_id INTEGER NOT NULL REFERENCES favorites(_id) ON DELETE CASCADE, position INTEGER NOT NULL, review_id TEXT, author TEXT, content TEXT, url TEXT);
+CREATE INDEX favorite_videos_movie_id ON favorite_videos (movie_id, position);
+CREATE INDEX favorite_reviews_movie_id ON favorite_reviews (movie_id, position);
+INSERT INTO favorites VALUES (550, 'Fight Club', 'Fight Club', '/adw6Lq9FiC9zjYEpOqfq03ituwp.jpg', '/87hTDiay2N2qWyX4Ds7ybXi9h8I.jpg', 'A ticking-time-bomb insomniac and a slippery soap salesman channel primal male aggression into a shocking new form of therapy.', 8.4, '1999', 1528300800000);
+INSERT INTO favorites VALUES (680, 'Pulp Fiction', 'Pulp Fiction', '/d5iIlFn5s0ImszYzBPb8JPIfbXD.jpg', '/suaEOtk1N1sgg2MTM7oZd2cfVp3.jpg', 'A burger-loving hit man, his philosophical partner and a washed-up boxer converge in this sprawling crime caper.', 8.5, '1994', NULL);
+INSERT INTO favorites VALUES (129, '千と千尋の神隠し', 'Spirited Away', '/39wmItIWsg5sZMyRUHLkWBcuVCM.jpg', '/Ab8mkHmkYADjU7wQiOkia9BzGvS.jpg', 'A young girl, Chihiro, becomes trapped in a strange new world of spirits.', 8.5, '2001', NULL);
+INSERT INTO favorite_videos (movie_id, position, video_id, video_key, name, site, type) VALUES (550, 0, '533ec654c3a36854480003eb', 'SUXWAEX2jlg', 'Trailer 1', 'YouTube', 'Trailer');
+INSERT INTO favorite_reviews (movie_id, position, review_id, author, content, url) VALUES (550, 0, '5b1c13b9c3a36848f2026384', 'Goddard', 'Pretty awesome movie.', 'https://www.themoviedb.org/review/5b1c13b9c3a36848f2026384');
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018 Pierluca Masala <pierluca.masala@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.example.android.popularmovies.benchmark;
+
+import com.example.android.popularmovies.data.objects.MovieResponse;
+import com.example.android.popularmovies.data.objects.ReviewResponse;
+import com.example.android.popularmovies.data.objects.VideoResponse;
+import com.example.android.popularmovies.utils.JsonUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the JSON parsing in JsonUtils, on sample API responses of
+ * different sizes. Run it with the GC profiler (-prof gc) to get the bytes allocated per
+ * operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonUtilsBenchmark {
+
+    @Benchmark
+    public MovieResponse parseMoviesList(MoviesFixture fixture) {
+        return JsonUtils.parseMoviesList(fixture.json);
+    }
+
+    @Benchmark
+    public VideoResponse parseVideos(VideosFixture fixture) {
+        return JsonUtils.parseVideos(fixture.json);
+    }
+
+    @Benchmark
+    public ReviewResponse parseReviews(ReviewsFixture fixture) {
+        return JsonUtils.parseReviews(fixture.json);
+    }
+
+    @State(Scope.Benchmark)
+    public static class MoviesFixture {
+        // A search with a few results, and a full page of a movies list
+        @Param({"movies_search_small", "movies_list_page"})
+        public String name;
+        String json;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            json = readFixture(name);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class VideosFixture {
+        @Param({"videos_small", "videos_large"})
+        public String name;
+        String json;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            json = readFixture(name);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ReviewsFixture {
+        // A single short review, and a page of long reviews
+        @Param({"reviews_small", "reviews_large"})
+        public String name;
+        String json;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            json = readFixture(name);
+        }
+    }
+
+    /**
+     * Reads a sample API response from the fixtures on the classpath
+     *
+     * @param name the name of the fixture, without extension
+     * @return the content of the fixture
+     * @throws IOException if the fixture can't be read
+     */
+    private static String readFixture(String name) throws IOException {
+        InputStream in = JsonUtilsBenchmark.class.getResourceAsStream("/fixtures/" + name + ".json");
+        if (in == null) {
+            throw new IOException("Fixture not found: " + name);
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), Charset.forName("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+}